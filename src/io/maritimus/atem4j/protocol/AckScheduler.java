@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import com.sun.istack.internal.NotNull;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces acknowledgements of a burst of ack requesting packets.
+ *
+ * An ACK acknowledges every package up to its ackId, so only the highest id received without a gap
+ * before it is sent: when the window since the first pending request expires, or when the burst ends
+ * by {@link #flush()}. Packages after a gap wait until it is filled by the resent packages, ids are
+ * tracked by an own {@link InboundSequenceWindow}, a gap wider than it is given up. Belongs to the
+ * thread driving the session.
+ */
+public class AckScheduler {
+
+    public static final long DEFAULT_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private static final int NONE = -1;
+
+    @FunctionalInterface
+    public interface IAckSender {
+        void sendAck(int ackId) throws IOException;
+    }
+
+    private final IAckSender sender;
+    private final InboundSequenceWindow sequence = new InboundSequenceWindow();
+    private long windowNanos = DEFAULT_WINDOW_NANOS;
+
+    private int pending = NONE;
+    private int lastSent = NONE;
+    private long firstNanos = 0;
+    private int covered = 0;        // requests covered by the pending ack
+
+    private long requested = 0;
+    private long sent = 0;
+    private long saved = 0;
+
+    public AckScheduler(@NotNull IAckSender sender) {
+        if (sender == null) {
+            throw new IllegalArgumentException("sender must be not null");
+        }
+
+        this.sender = sender;
+    }
+
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    /**
+     * @param windowNanos longest delay of an acknowledgement, 0 acknowledges every request at once
+     */
+    public void setWindowNanos(long windowNanos) {
+        if (windowNanos < 0) {
+            throw new IllegalArgumentException(String.format("windowNanos = %d must be >= 0", windowNanos));
+        }
+
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * Registers an ack request of the package.
+     */
+    public void offer(int packageId, long nowNanos) throws IOException {
+        requested++;
+
+        int result = sequence.accept(packageId);
+        if (result == InboundSequenceWindow.GAP) {
+            // the packages before the gap are acknowledged at once
+            flush();
+        }
+        covered++;
+
+        int contiguous = sequence.getContiguous();
+        boolean isResent = result == InboundSequenceWindow.DUPLICATE || result == InboundSequenceWindow.LATE;
+        if (contiguous != lastSent || (isResent && pending == NONE)) {
+            // moved on, or a resent package whose ack is lost
+            if (pending == NONE) {
+                firstNanos = nowNanos;
+            }
+            pending = contiguous;
+        }
+
+        if (pending != NONE && nowNanos - firstNanos >= windowNanos) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the pending acknowledgement, if any.
+     */
+    public void flush() throws IOException {
+        if (pending == NONE) {
+            return;
+        }
+
+        int ackId = pending;
+        pending = NONE;
+        lastSent = ackId;
+        sent++;
+        saved += covered - 1;
+        covered = 0;
+        sender.sendAck(ackId);
+    }
+
+    /**
+     * Drops the pending acknowledgement and the tracked ids, when the session is gone.
+     */
+    public void discard() {
+        pending = NONE;
+        lastSent = NONE;
+        covered = 0;
+        sequence.reset();
+    }
+
+    public boolean hasPending() {
+        return pending != NONE;
+    }
+
+    public long getRequested() {
+        return requested;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * @return ack datagrams not sent thanks to coalescing
+     */
+    public long getSaved() {
+        return saved;
+    }
+}
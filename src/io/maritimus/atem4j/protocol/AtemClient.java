@@ -16,17 +16,33 @@
 
 package io.maritimus.atem4j.protocol;
 
+import com.sun.istack.internal.NotNull;
 import io.maritimus.atem4j.protocol.command.CmdInitializationComplete;
 import io.maritimus.atem4j.protocol.command.Command;
+import io.maritimus.atem4j.protocol.command.CommandInterest;
+import io.maritimus.atem4j.protocol.command.CommandReader;
+import io.maritimus.atem4j.protocol.command.CommandRegistry;
+import io.maritimus.atem4j.protocol.command.CommandViews;
+import io.maritimus.atem4j.protocol.command.ICommandCapture;
+import io.maritimus.atem4j.protocol.concurrent.HashedTimerWheel;
+import io.maritimus.atem4j.protocol.concurrent.WaitStrategyType;
+import io.maritimus.atem4j.protocol.udp.BufferPool;
 import io.maritimus.atem4j.protocol.udp.IUdpClientListener;
-import io.maritimus.atem4j.protocol.udp.StateTimeoutException;
 import io.maritimus.atem4j.protocol.udp.UdpClient;
+import io.maritimus.atem4j.protocol.udp.UdpMultiplexer;
+import io.maritimus.atem4j.protocol.udp.UdpReactor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.PortUnreachableException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by Oleg Akimov on 01/08/15.
@@ -36,32 +52,88 @@ public class AtemClient implements IUdpClientListener {
     private static final Logger log = LoggerFactory.getLogger(AtemClient.class);
     public static final int RND_UID_MIN = 10000;
     public static final int RND_UID_MAX = 60000;
-    public static final long LOOP_SLEEP_MS = 50;
-
-    public static final String STATE_SLEEPING = "SLEEPING";
-    public static final String STATE_CONNECTING = "CONNECTING";
-    public static final String STATE_INITIALIZING = "INITIALIZING";
-    public static final String STATE_WORKING = "WORKING";
-    public static final String STATE_RECOVERING = "RECOVERING";
+    public static final int MASK_PACKAGE_ID = 0x7FFF;
+    private static final int OFFSET_UID = 2;
+
+    public enum State {
+        SLEEPING,
+        CONNECTING,
+        INITIALIZING,
+        WORKING,
+        RECOVERING
+    }
 
     public static final long TIMEOUT_SLEEPING_MS = 100;
+
+    // retries and state timeouts follow the measured round trip, see RttEstimator,
+    // these are the values with the initial retransmit timeout of TIMEOUT_HELLO_MS
     public static final long TIMEOUT_HELLO_MS = 200;            // 0.2 sec
     public static final long TIMEOUT_CONNECTING_MS = 4000;      // 2 sec by protocol, 4 sec for bad connection
     public static final long TIMEOUT_INITIALIZING_MS = 2000;    // 2 sec???
     public static final long TIMEOUT_WORKING_MS = 1500;         // 1.5 sec
     public static final long TIMEOUT_RECOVERING_MS = 2000;      // 2 sec
-    public static final long TIMEOUT_ACKREQ_MS = 200;           // 0.2 sec
 
-    private String state = null;
+    /**
+     * @deprecated ack requests are resent by the retransmit timeout, which starts at {@link #TIMEOUT_HELLO_MS}
+     */
+    @Deprecated
+    public static final long TIMEOUT_ACKREQ_MS = TIMEOUT_HELLO_MS;
+
+    // state timeout = base + multiplier * rto, within floor..ceiling
+    private static final int CONNECTING_RTOS = (int) (TIMEOUT_CONNECTING_MS / TIMEOUT_HELLO_MS);
+    private static final int INITIALIZING_RTOS = (int) (TIMEOUT_INITIALIZING_MS / TIMEOUT_HELLO_MS);
+    private static final int WORKING_RTOS = 2;
+    private static final long WORKING_BASE_NANOS =                                       // atem keepalive
+            TimeUnit.MILLISECONDS.toNanos(TIMEOUT_WORKING_MS - WORKING_RTOS * TIMEOUT_HELLO_MS);
+    private static final int RECOVERING_RTOS = (int) (TIMEOUT_RECOVERING_MS / TIMEOUT_HELLO_MS);
+    private static final long STATE_FLOOR_NANOS = TimeUnit.MILLISECONDS.toNanos(1000);
+    private static final long RECOVERING_FLOOR_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long STATE_CEILING_NANOS = TimeUnit.MILLISECONDS.toNanos(8000);
+    private static final long WORKING_CEILING_NANOS = TimeUnit.MILLISECONDS.toNanos(6000);
+
+    private State state = null;
     private UdpClient client = null;
     private Thread udpThread = null;
+    private UdpReactor reactor = null;
+    private UdpMultiplexer multiplexer = null;
+    private WaitStrategyType waitStrategy = WaitStrategyType.BLOCKING;
+    private WaitStrategyType receiveWaitStrategy = WaitStrategyType.BLOCKING;
+    private ThreadFactory threadFactory = null;
+    private boolean isDirectReceiveBuffers = false;
+    private CommandRegistry commandRegistry = CommandRegistry.getDefault();
+    private ICommandCapture commandCapture = null;
+    private DecodeStage decodeStage = null;
+    private volatile DecodeStage.Session decodeSession = null;
     private int packageId = 0;
     private int uid = 0;
-    private long lastTime = 0;      // last server answers time
-    private long markerTime = 0;    // marker time, ex.: hello timeout
-
+    private final ControlPackets controlPackets = new ControlPackets(0);
+    private final AckScheduler acks = new AckScheduler(this::sendAck);
+    private boolean isDraining = false;     // acks are coalesced until the received packets are drained
+    private volatile InboundSequenceWindow inbound = new InboundSequenceWindow();
+    private volatile boolean isRequestingRetransmits = false;
+    private volatile OutboundWindow outbound = null;    // exists while attached to a scheduler
+    private int outboundWindowSize = OutboundWindow.DEFAULT_WINDOW_SIZE;
+    private long lastTime = 0;      // last server answers time, System.nanoTime()
+
+    private final RttEstimator rtt = new RttEstimator(
+            TimeUnit.MILLISECONDS.toNanos(TIMEOUT_HELLO_MS),
+            RttEstimator.DEFAULT_MIN_RTO_NANOS,
+            RttEstimator.DEFAULT_MAX_RTO_NANOS
+    );
+    private long helloSentNanos = -1;       // -1 when resent, the answer is no rtt sample
+    private long ackRequestSentNanos = -1;
+    private int ackRequestId = -1;
+
+    private volatile AtemScheduler scheduler = null;
     private volatile boolean isStopped = false;
 
+    final AtomicBoolean isReady = new AtomicBoolean(false);
+
+    // inactivity deadline of the current state, re-armed lazily from lastTime
+    private final HashedTimerWheel.Timer stateTimer = new HashedTimerWheel.Timer(this::onStateTimer);
+    // hello / ack request resends and the pause before reconnecting
+    private final HashedTimerWheel.Timer retryTimer = new HashedTimerWheel.Timer(this::onRetryTimer);
+
     public final InetSocketAddress atemAddress;
 
     /*
@@ -76,10 +148,196 @@ public class AtemClient implements IUdpClientListener {
         return atemAddress.toString();
     }
 
-    public String getState() {
+    public State getState() {
         return state;
     }
 
+    public UdpReactor getReactor() {
+        return reactor;
+    }
+
+    /**
+     * Serves the udp client by the given shared reactor instead of a dedicated thread,
+     * null returns back to a thread per client. Takes effect on the next connection.
+     */
+    public void setReactor(UdpReactor reactor) {
+        this.reactor = reactor;
+    }
+
+    public UdpMultiplexer getMultiplexer() {
+        return multiplexer;
+    }
+
+    /**
+     * Opens sessions on the shared channel of the multiplexer instead of an own channel and thread,
+     * takes precedence over the reactor. Takes effect on the next connection.
+     */
+    public void setMultiplexer(UdpMultiplexer multiplexer) {
+        this.multiplexer = multiplexer;
+    }
+
+    public WaitStrategyType getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * Sets how {@link #loop()} waits for events. Takes effect on the next {@link #loop()}.
+     */
+    public void setWaitStrategy(@NotNull WaitStrategyType waitStrategy) {
+        if (waitStrategy == null) {
+            throw new IllegalArgumentException("waitStrategy must be not null");
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    public WaitStrategyType getReceiveWaitStrategy() {
+        return receiveWaitStrategy;
+    }
+
+    /**
+     * Sets how the udp receiving thread waits for datagrams, ignored when the client is served by a reactor.
+     * The thread is named "atem-udp-&lt;atem address&gt;" so it can be pinned to a core by os tools.
+     * Takes effect on the next connection.
+     */
+    public void setReceiveWaitStrategy(@NotNull WaitStrategyType receiveWaitStrategy) {
+        if (receiveWaitStrategy == null) {
+            throw new IllegalArgumentException("receiveWaitStrategy must be not null");
+        }
+        this.receiveWaitStrategy = receiveWaitStrategy;
+    }
+
+    public DecodeStage getDecodeStage() {
+        return decodeStage;
+    }
+
+    /**
+     * Decodes received datagrams on the workers of the stage instead of the scheduler thread,
+     * null decodes on the scheduler thread. Takes effect on the next connection.
+     */
+    public void setDecodeStage(DecodeStage decodeStage) {
+        this.decodeStage = decodeStage;
+    }
+
+    public boolean isDirectReceiveBuffers() {
+        return isDirectReceiveBuffers;
+    }
+
+    /**
+     * Receives datagrams into direct buffers, saves a copy per datagram in the channel, but makes
+     * decoding slower. Ignored with a multiplexer. Takes effect on the next connection.
+     */
+    public void setDirectReceiveBuffers(boolean isDirectReceiveBuffers) {
+        this.isDirectReceiveBuffers = isDirectReceiveBuffers;
+    }
+
+    public CommandRegistry getCommandRegistry() {
+        return commandRegistry;
+    }
+
+    /**
+     * Decodes commands by the given registry. Takes effect on the next connection.
+     */
+    public void setCommandRegistry(@NotNull CommandRegistry commandRegistry) {
+        if (commandRegistry == null) {
+            throw new IllegalArgumentException("commandRegistry must be not null");
+        }
+
+        this.commandRegistry = commandRegistry;
+    }
+
+    public ICommandCapture getCommandCapture() {
+        return commandCapture;
+    }
+
+    /**
+     * Debugging hook for the raw bytes of every received command block, including those
+     * not of interest, see {@link #getCommandInterest()}. Takes effect on the next connection.
+     */
+    public void setCommandCapture(ICommandCapture commandCapture) {
+        this.commandCapture = commandCapture;
+    }
+
+    /**
+     * Acknowledgements of ack requests while working, see {@link AckScheduler#getSaved()}.
+     * The coalescing window is set by {@link AckScheduler#setWindowNanos(long)} from the scheduler thread
+     * or before starting.
+     */
+    public AckScheduler getAckScheduler() {
+        return acks;
+    }
+
+    /**
+     * Package ids received by the current session: duplicates, gaps and late packets.
+     */
+    public InboundSequenceWindow getInboundSequence() {
+        return inbound;
+    }
+
+    public boolean isRequestingRetransmits() {
+        return isRequestingRetransmits;
+    }
+
+    /**
+     * Asks the atem to resend the first package of every detected gap instead of waiting for
+     * its own resend. Off by default.
+     */
+    public void setRequestingRetransmits(boolean isRequestingRetransmits) {
+        this.isRequestingRetransmits = isRequestingRetransmits;
+    }
+
+    /**
+     * Round trip to the atem, measured by hello, ack request and command exchanges. Kept across
+     * reconnections.
+     */
+    public RttEstimator getRttEstimator() {
+        return rtt;
+    }
+
+    public int getOutboundWindowSize() {
+        return outboundWindowSize;
+    }
+
+    /**
+     * Sets how many packets sent by {@link #sendCommand(Command...)} may wait for their ACKs at once.
+     */
+    public void setOutboundWindowSize(int outboundWindowSize) {
+        if (outboundWindowSize < 1 || outboundWindowSize > OutboundWindow.MAX_WINDOW_SIZE) {
+            throw new IllegalArgumentException(String.format(
+                    "outboundWindowSize = %d must be in 1..%d",
+                    outboundWindowSize,
+                    OutboundWindow.MAX_WINDOW_SIZE
+            ));
+        }
+
+        this.outboundWindowSize = outboundWindowSize;
+        runOnScheduler(() -> {
+            if (outbound != null) {
+                outbound.setWindowSize(this.outboundWindowSize);
+            }
+        });
+    }
+
+    /**
+     * @return packets sent by {@link #sendCommand(Command...)}, null if the client is not started.
+     * Belongs to the scheduler thread, other threads may read its counters only.
+     */
+    public OutboundWindow getOutboundWindow() {
+        return outbound;
+    }
+
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Creates udp receiving threads by the given factory, for instance virtual threads from
+     * {@link io.maritimus.atem4j.protocol.concurrent.VirtualThreads#newThreadFactory(String)}.
+     * Null returns back to a platform thread per client. Takes effect on the next connection.
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
     protected AtemClient(InetSocketAddress atemAddress) {
         this.atemAddress = atemAddress;
         client = null;
@@ -87,15 +345,23 @@ public class AtemClient implements IUdpClientListener {
         state = null;
     }
 
-    protected void setState(String newState) {
-        log.debug(String.format("changing state from %s to %s", state, newState));
+    protected void setState(State newState) {
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("changing state from %s to %s", state, newState));
+        }
         state = newState;
     }
 
     protected void toInitializing() {
-        setState(STATE_INITIALIZING);
+        setState(State.INITIALIZING);
 
         updateLastTime();
+        if (helloSentNanos >= 0) {
+            rtt.sample(lastTime - helloSentNanos);
+            helloSentNanos = -1;
+        }
+        cancelTimer(retryTimer);
+        armStateTimer();
 
         log.info(String.format(
                 "connected to %s with uid %d from port %d",
@@ -106,155 +372,501 @@ public class AtemClient implements IUdpClientListener {
     }
 
     protected void toWorking() {
-        setState(STATE_WORKING);
+        setState(State.WORKING);
 
         updateLastTime();
+        cancelTimer(retryTimer);
+        armStateTimer();
+
+        if (outbound != null) {
+            outbound.open();
+        }
 
         log.info("initialized");
     }
 
     protected void toRecovering() throws IOException {
-        setState(STATE_RECOVERING);
+        setState(State.RECOVERING);
 
         sendAckRequest();
 
         updateLastTime();
+        armStateTimer();
+        scheduleRetry();
 
         log.info("connection lost, recovering");
     }
 
     protected void toStopped() {
-        setState(STATE_SLEEPING);
+        setState(State.SLEEPING);
 
         packageId = 0;
         uid = Utils.random(RND_UID_MIN, RND_UID_MAX);
-
-        long timeout = TIMEOUT_SLEEPING_MS;
+        controlPackets.setUid(uid);
+        acks.discard();
+        helloSentNanos = -1;
+        ackRequestSentNanos = -1;
+        ackRequestId = -1;
+
+        if (outbound != null) {
+            outbound.close(new IOException("connection is closed"));
+        }
 
         if (client != null) {
             client.stop();
+
+            if (decodeSession != null) {
+                // received datagrams belong to the decoding worker
+                decodeSession.close();
+                decodeSession = null;
+            } else {
+                client.discardReceived();
+                client.pool.reportLeaks(BufferPool.LEAK_AGE_NANOS);
+            }
         }
 
-        setMarkerItme(timeout);
+        cancelTimer(stateTimer);
+        scheduleTimer(retryTimer, TIMEOUT_SLEEPING_MS);
     }
 
     protected void toConnecting() throws IOException {
-        setState(STATE_CONNECTING);
+        setState(State.CONNECTING);
+        inbound = new InboundSequenceWindow();
+
+        // create and start upd client
+        if (multiplexer != null) {
+            // served by the multiplexer thread
+            client = multiplexer.open(atemAddress, this, waitStrategy);
+            client.setCommandReader(createCommandReader());
+            client.setSequenceWindow(inbound);
+            openDecodeSession();
+        } else {
+            client = createUdpClient();
+            client.setCommandReader(createCommandReader());
+            client.setSequenceWindow(inbound);
+            openDecodeSession();
+
+            if (reactor != null) {
+                reactor.register(client);
+            } else {
+                String name = String.format("atem-udp-%s", atemAddress);
+                if (threadFactory == null) {
+                    udpThread = new Thread(new UdpProcess(client), name);
+                } else {
+                    udpThread = threadFactory.newThread(new UdpProcess(client));
+                    udpThread.setName(name);
+                }
+                udpThread.start();
+            }
+        }
+
+        // send hello message
+        sendHello();
+        helloSentNanos = System.nanoTime();
+        scheduleRetry();
+
+        // reset last time
+        updateLastTime();
+        armStateTimer();
 
-        // create upd client
+        log.info(String.format(
+                "connecting to %s with uid %d from port %d",
+                atemAddress,
+                uid,
+                client.localPort
+        ));
+    }
+
+    private UdpClient createUdpClient() {
         try {
-            client = UdpClient.create(atemAddress, 0, 0, this);
+            return UdpClient.create(atemAddress, 0, 0, this, waitStrategy, receiveWaitStrategy, createBufferPool());
         } catch(IOException ex) {
             log.error("Can't create udp client", ex);
 
             try {
-               client = UdpClient.create(atemAddress, 0, 0, this);
+               return UdpClient.create(atemAddress, 0, 0, this, waitStrategy, receiveWaitStrategy, createBufferPool());
             } catch (IOException ex2) {
                 log.error("Can't create udp client (2nd try), aborting", ex2);
                 toStopped();
                 throw new RuntimeException("Can't create udp client", ex2);
             }
         }
+    }
 
-        // start udp client
-        udpThread = new Thread(new UdpProcess(client));
-        udpThread.start();
+    private CommandReader createCommandReader() {
+        CommandInterest interest = getCommandInterest();
+        if (interest != null) {
+            // needed by the client itself to finish the initialization
+            interest = interest.with("InCm");
+        }
 
-        // send hello message
-        sendHello();
-        setMarkerItme(TIMEOUT_HELLO_MS);
+        // views must not outlive the poll, packets decoded ahead by a decode stage get commands
+        CommandViews views = isUsingCommandViews() && decodeStage == null ? new CommandViews() : null;
+        return new CommandReader(commandRegistry, interest, commandCapture, views);
+    }
 
-        // reset last time
-        updateLastTime();
+    private void openDecodeSession() {
+        decodeSession = decodeStage == null ? null : decodeStage.open(client, this::wakeup);
+    }
 
-        log.info(String.format(
-                "connecting to %s with uid %d from port %d",
-                atemAddress,
-                uid,
-                client.localPort
-        ));
+    private BufferPool createBufferPool() {
+        return new BufferPool(UdpClient.POOL_BUFFERS, UdpClient.MAX_RECEIVE_BUF, isDirectReceiveBuffers);
+    }
+
+    /**
+     * Runs the client on the calling thread until {@link #stop()}.
+     */
+    public void loop() {
+        AtemScheduler own = new AtemScheduler(waitStrategy, true);
+        own.add(this);
+        own.run();
+
+        if (scheduler == own) {
+            // scheduler thread is interrupted
+            stop();
+            detach();
+        }
+
+        log.debug("loop is done");
+    }
+
+    /**
+     * Runs {@link #loop()} on a new thread of the factory, which also creates the udp receiving
+     * threads. With a virtual thread factory a session costs no platform threads while it waits.
+     *
+     * @return started thread
+     */
+    public Thread start(@NotNull ThreadFactory threadFactory) {
+        if (threadFactory == null) {
+            throw new IllegalArgumentException("threadFactory must be not null");
+        }
+
+        this.threadFactory = threadFactory;
+        Thread thread = threadFactory.newThread(this::loop);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Runs the client by the shared scheduler, returns immediately.
+     */
+    public void start(@NotNull AtemScheduler scheduler) {
+        if (scheduler == null) {
+            throw new IllegalArgumentException("scheduler must be not null");
+        }
+        scheduler.add(this);
     }
 
     public void stop() {
         this.isStopped = true;
+
+        AtemScheduler current = scheduler;
+        if (current != null) {
+            current.execute(this::detach);
+        }
     }
 
     protected void setUid(int newUid) {
         log.info(String.format("changing Uid from %d to %d", uid, newUid));
         uid = newUid;
+        controlPackets.setUid(newUid);
     }
 
-    public void loop() {
-        int j = 10000;
-        loop: while(true) {
-            if (isStopped) {
-                toStopped();
+    void attach(AtemScheduler newScheduler) {
+        if (isStopped) {
+            newScheduler.remove(this);
+            return;
+        }
+
+        scheduler = newScheduler;
+        outbound = new OutboundWindow(newScheduler.timers, this::getNextPackageId, this::sendPackage);
+        outbound.setWindowSize(outboundWindowSize);
+        outbound.setRttEstimator(rtt);
+
+        if (state == null) {
+            toStopped();
+        } else if (state == State.SLEEPING) {
+            scheduleTimer(retryTimer, TIMEOUT_SLEEPING_MS);
+        }
+    }
+
+    void detach() {
+        AtemScheduler current = scheduler;
+        if (current == null) {
+            return;
+        }
+
+        toStopped();
+        cancelTimer(stateTimer);
+        cancelTimer(retryTimer);
+
+        outbound = null;
+        scheduler = null;
+        current.remove(this);
+    }
+
+    /**
+     * Handles everything what the udp client has received, runs on the scheduler thread.
+     */
+    void onPacketsReady() {
+        AtemScheduler current = scheduler;
+        if (client == null || current == null) {
+            return;
+        }
+
+        DecodeStage.Session session = decodeSession;
+        long start = System.nanoTime();
+        int depth = session != null ? session.size() : client.inQueue.size();
+        int count = 0;
+
+        try {
+            isDraining = true;
+            Packet packet;
+            while (client != null && (packet = session != null ? session.poll() : client.poll()) != null) {
+                onPacket(packet);
+                count++;
+            }
+
+            // the burst is over
+            isDraining = false;
+            acks.flush();
+        } catch (IOException ex) {
+            log.error("socket error", ex);
+            toStopped();
+        } finally {
+            isDraining = false;
+            if (count > 0) {
+                current.applyMetrics.record(count, System.nanoTime() - start, depth);
+            }
+        }
+    }
+
+    private void wakeup() {
+        AtemScheduler current = scheduler;
+        if (current != null) {
+            current.wakeup(this);
+        }
+    }
+
+    protected void onPacket(Packet packet) throws IOException {
+        updateLastTime();
+
+        if (packet.header.isAck()) {
+            onAck(packet.header.ackId);
+        }
+
+        switch (state) {
+            case CONNECTING:
+                if (!packet.header.isHello()) {
+                    log.debug(String.format("ignoring packet on connecting: %s", packet));
+                }
+
+                sendAck(packet);
+                toInitializing();
                 break;
+
+            case INITIALIZING:
+                onInitializingPacket(packet);
+                break;
+
+            case RECOVERING:
+                toWorking();
+                onWorkingPacket(packet);
+                break;
+
+            case WORKING:
+                onWorkingPacket(packet);
+                break;
+
+            default:
+                log.trace(String.format("ignoring packet on state %s", state));
+                break;
+        }
+    }
+
+    protected void onWorkingPacket(Packet packet) throws IOException {
+        if (packet.header.isAckRequest()) {
+            if (isDraining) {
+                acks.offer(packet.header.packageId, lastTime);
+            } else {
+                sendAck(packet);
             }
+        }
 
-            try {
-                switch (state) {
-                    case STATE_SLEEPING:
-                        doSleeping();
-                        break;
+        if (packet.header.uid != 0 && packet.header.uid != uid) {
+            setUid(packet.header.uid);
+        }
 
-                    case STATE_CONNECTING:
-                        doConnecting();
-                        break;
+        for (Command cmd : packet.commands) {
+            applyCommand(cmd);
+        }
+    }
 
-                    case STATE_INITIALIZING:
-                        doInitializing();
-                        break;
+    protected void onInitializingPacket(Packet packet) throws IOException {
+        //ack only hello until full initialization
+        if (packet.header.isHello()) {
+            sendAck(packet);
+            return;
+        }
 
-                    case STATE_WORKING:
-                        doWorking();
-                        break;
+        if (packet.header.uid != 0 && packet.header.uid != uid) {
+            setUid(packet.header.uid);
+        }
 
+        boolean completed = false;
+        for (Command cmd : packet.commands) {
+            if (cmd instanceof CmdInitializationComplete) {
+                completed = true;
+                continue;
+            }
 
-                    case STATE_RECOVERING:
-                        doRecovering();
-                        break;
+            applyCommand(cmd);
+        }
 
-                    default:
-                        log.error(String.format("State %s is not supported yet", state));
-                        stop();
-                        break;
-                }
+        if (completed) {
+            log.info("initialization complete");
+            toWorking();
+        }
+    }
 
-                if (client == null) {
-                    Thread.sleep(LOOP_SLEEP_MS);
-                } else {
-                    synchronized (client.inQueue) {
-                        client.inQueue.wait(LOOP_SLEEP_MS);
-                    }
-                }
+    private void onAck(int ackId) {
+        if (ackId == ackRequestId) {
+            if (ackRequestSentNanos >= 0) {
+                rtt.sample(lastTime - ackRequestSentNanos);
+            }
+            ackRequestId = -1;
+            ackRequestSentNanos = -1;
+        }
+
+        if (outbound != null) {
+            outbound.onAck(ackId);
+        }
+    }
+
+    private void onStateTimer() {
+        long timeout = TimeUnit.MILLISECONDS.toNanos(getStateTimeout());
+        long deadline = lastTime + timeout;
+        long now = System.nanoTime();
+
+        if (now - deadline < 0) {
+            // packets were received since the timer is armed
+            scheduler.timers.scheduleAt(stateTimer, deadline);
+            return;
+        }
+
+        log.info(String.format("timeout on state %s", state));
+
+        if (state == State.WORKING) {
+            try {
+                toRecovering();
             } catch (IOException ex) {
                 log.error("socket error", ex);
                 toStopped();
-            } catch (StateTimeoutException ex) {
-                log.info(ex.getMessage());
-                if (state == STATE_WORKING) {
-                    try {
-                        toRecovering();
-                    } catch (IOException ex2) {
-                        log.error("socket error", ex2);
-                        toStopped();
-                    }
-                } else {
-                    toStopped();
-                }
-            } catch (InterruptedException e) {
-                log.debug("sleep is interrupted", e);
-                stop();
             }
+        } else {
+            toStopped();
+        }
+    }
 
-            if (--j < 0) {
-                log.debug("end of J");
-                stop();
+    private void onRetryTimer() {
+        try {
+            switch (state) {
+                case SLEEPING:
+                    client = null;
+                    udpThread = null;
+                    toConnecting();
+                    break;
+
+                case CONNECTING:
+                    helloSentNanos = -1;
+                    rtt.backoff();
+                    resendHello();
+                    scheduleRetry();
+                    break;
+
+                case RECOVERING:
+                    ackRequestSentNanos = -1;
+                    rtt.backoff();
+                    resendLastAckRequest();
+                    scheduleRetry();
+                    break;
+
+                default:
+                    break;
             }
+        } catch (IOException ex) {
+            log.error("socket error", ex);
+            toStopped();
+        } catch (RuntimeException ex) {
+            log.error("retry is failed", ex);
+            toStopped();
         }
+    }
 
-        log.debug("loop is done");
+    /**
+     * @return inactivity timeout of the current state in ms, derived from the measured round trip
+     */
+    protected long getStateTimeout() {
+        return TimeUnit.NANOSECONDS.toMillis(getStateTimeoutNanos());
+    }
+
+    private long getStateTimeoutNanos() {
+        switch (state) {
+            case CONNECTING:
+                return rtt.getTimeoutNanos(0, CONNECTING_RTOS, STATE_FLOOR_NANOS, STATE_CEILING_NANOS);
+            case INITIALIZING:
+                return rtt.getTimeoutNanos(0, INITIALIZING_RTOS, STATE_FLOOR_NANOS, STATE_CEILING_NANOS);
+            case WORKING:
+                return rtt.getTimeoutNanos(WORKING_BASE_NANOS, WORKING_RTOS, STATE_FLOOR_NANOS, WORKING_CEILING_NANOS);
+            case RECOVERING:
+                return rtt.getTimeoutNanos(0, RECOVERING_RTOS, RECOVERING_FLOOR_NANOS, STATE_CEILING_NANOS);
+            default:
+                return TimeUnit.MILLISECONDS.toNanos(TIMEOUT_SLEEPING_MS);
+        }
+    }
+
+    private void armStateTimer() {
+        if (scheduler != null) {
+            scheduler.timers.scheduleAt(stateTimer, lastTime + TimeUnit.MILLISECONDS.toNanos(getStateTimeout()));
+        }
+    }
+
+    private void scheduleRetry() {
+        if (scheduler != null) {
+            scheduler.timers.schedule(retryTimer, rtt.getRetransmitTimeoutNanos());
+        }
+    }
+
+    private void scheduleTimer(HashedTimerWheel.Timer timer, long delayMs) {
+        if (scheduler != null) {
+            scheduler.timers.schedule(timer, TimeUnit.MILLISECONDS.toNanos(delayMs));
+        }
+    }
+
+    private void cancelTimer(HashedTimerWheel.Timer timer) {
+        if (scheduler != null) {
+            scheduler.timers.cancel(timer);
+        }
+    }
+
+    /**
+     * Commands passed to {@link #applyCommand(Command)}, the blocks of any other commands are
+     * skipped without decoding. Packets are acknowledged regardless.
+     *
+     * @return interest or null for all commands
+     */
+    protected CommandInterest getCommandInterest() {
+        return null;
+    }
+
+    /**
+     * Passes the hot commands to {@link #applyCommand(Command)} as reusable
+     * {@link io.maritimus.atem4j.protocol.command.CommandView}s, which must not be kept after
+     * the call, see {@link io.maritimus.atem4j.protocol.command.CommandView#copy()}.
+     * Ignored with a decode stage.
+     */
+    protected boolean isUsingCommandViews() {
+        return false;
     }
 
     protected void applyCommand(Command cmd) {
@@ -262,256 +874,262 @@ public class AtemClient implements IUdpClientListener {
     }
 
     protected void sendAck(Packet atemPacket) throws IOException {
+        sendAck(atemPacket.header.packageId);
+    }
+
+    protected void sendAck(int atemPackageId) throws IOException {
         try {
-            int atemPackageId = atemPacket.header.packageId;
-            PacketHeader header = new PacketHeader(
-                    PacketHeader.FLAG_ACK,
-                    PacketHeader.HEADER_LENGTH,
-                    uid,
-                    atemPackageId,
-                    0,
-                    0
-            );
-            Packet packet = new Packet(header);
-            log.debug(String.format("sending Ack for packageId = %d", atemPackageId));
-            client.send(packet);
+            client.send(controlPackets.ack(atemPackageId));
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("sending Ack for packageId = %d", atemPackageId));
+            }
         } catch (PortUnreachableException ex) {
-            log.trace(String.format("atem %s is unreachable", client.atemAddress));
+            logUnreachable();
         }
     }
 
     protected void sendHello() throws IOException {
         try {
-            client.send(PacketHello.createClientFirstHello(uid));
-            log.debug(String.format("sending Hello to atem %s", client.atemAddress));
+            client.send(controlPackets.hello());
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("sending Hello to atem %s", client.atemAddress));
+            }
         } catch (PortUnreachableException ex) {
-            log.trace(String.format("atem %s is unreachable", client.atemAddress));
+            logUnreachable();
         }
     }
 
     protected void resendHello() throws IOException {
         try {
-            client.send(PacketHello.createClientResendHello(uid));
-            log.debug(String.format("resending Hello to atem %s", client.atemAddress));
+            client.send(controlPackets.resendHello());
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("resending Hello to atem %s", client.atemAddress));
+            }
         } catch (PortUnreachableException ex) {
-            log.trace(String.format("atem %s is unreachable", client.atemAddress));
+            logUnreachable();
         }
     }
 
+    /**
+     * Package ids are 15 bits, wrapping from 0x7FFF back to 0.
+     */
     public int getNextPackageId() {
-        packageId = packageId + 1;
+        packageId = (packageId + 1) & MASK_PACKAGE_ID;
         return packageId;
     }
 
     public void sendAckRequest() throws IOException {
         try {
             int clientPackageId = getNextPackageId();
-            PacketHeader header = new PacketHeader(
-                    PacketHeader.FLAG_ACKREQ,
-                    PacketHeader.HEADER_LENGTH,
-                    uid,
-                    0,
-                    clientPackageId,
-                    0
-            );
-            Packet packet = new Packet(header);
-            client.send(packet);
-            log.debug(String.format("sending AckReq for packageId = %d", clientPackageId));
+            ackRequestId = clientPackageId;
+            ackRequestSentNanos = System.nanoTime();
+            client.send(controlPackets.ackRequest(clientPackageId));
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("sending AckReq for packageId = %d", clientPackageId));
+            }
         } catch (PortUnreachableException ex) {
-            log.trace(String.format("atem %s is unreachable", client.atemAddress));
+            logUnreachable();
         }
     }
 
     public void resendLastAckRequest() throws IOException {
         try {
-            int clientPackageId = packageId;
-            PacketHeader header = new PacketHeader(
-                    PacketHeader.FLAG_ACKREQ | PacketHeader.FLAG_RESEND,
-                    PacketHeader.HEADER_LENGTH,
-                    uid,
-                    0,
-                    clientPackageId,
-                    0
-            );
-            Packet packet = new Packet(header);
-            client.send(packet);
-            log.debug(String.format("resending AckReq for packageId = %d", clientPackageId));
+            // commands may have been sent after the ack request
+            int clientPackageId = ackRequestId >= 0 ? ackRequestId : packageId;
+            client.send(controlPackets.resendAckRequest(clientPackageId));
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("resending AckReq for packageId = %d", clientPackageId));
+            }
         } catch (PortUnreachableException ex) {
-            log.trace(String.format("atem %s is unreachable", client.atemAddress));
+            logUnreachable();
         }
     }
 
-    protected void doWorking() throws IOException, StateTimeoutException {
-        if (client.inQueue.isEmpty()) {
-            checkLastTimeout(TIMEOUT_WORKING_MS);
-            return;
+    /**
+     * Sends the commands in one ack requesting packet, may be called from any thread.
+     * Packets are queued until the session is working and resent until acknowledged,
+     * see {@link #setOutboundWindowSize(int)}.
+     *
+     * @return completed by the ACK, failed when the attempts are exhausted or the connection is closed,
+     *         dependent stages run on {@link ListenerSubscription#getDefaultExecutor()}, never on the protocol thread
+     * @throws IllegalArgumentException if a command can't be written, see {@link Command#write(ByteBuffer)},
+     *                                  or the commands do not fit in one packet of {@link PacketHeader#MASK_SIZE} bytes
+     */
+    public CompletableFuture<Void> sendCommand(@NotNull Command... commands) {
+        if (commands == null || commands.length == 0) {
+            throw new IllegalArgumentException("commands must be not empty");
         }
 
-        Packet packet;
-        queue:
-        while ((packet = client.inQueue.poll()) != null) {
-
-            updateLastTime();
+        ByteBuffer datagram = encode(commands);
+        CompletableFuture<Void> future = new CompletableFuture<>();
 
-            if (packet.header.isAckRequest()) {
-                sendAck(packet);
-            }
-
-            if (packet.header.uid != 0 && packet.header.uid != uid) {
-                setUid(packet.header.uid);
+        // completed on the scheduler thread, relayed so the caller's stages don't stall the shared scheduler
+        CompletableFuture<Void> acked = new CompletableFuture<>();
+        acked.whenCompleteAsync((ignored, cause) -> {
+            if (cause == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(cause);
             }
+        }, ListenerSubscription.getDefaultExecutor());
 
-            for (Command cmd : packet.commands) {
-                applyCommand(cmd);
+        if (!runOnScheduler(() -> {
+            if (outbound != null && state != State.SLEEPING) {
+                outbound.submit(datagram, acked);
+            } else {
+                acked.completeExceptionally(new IOException("client is not connected"));
             }
+        })) {
+            future.completeExceptionally(new IllegalStateException("client is not started"));
         }
 
-        //todo: make ackreq
+        return future;
     }
 
-    protected void doInitializing() throws IOException, StateTimeoutException {
-
-        if (client.inQueue.isEmpty()) {
-            checkLastTimeout(TIMEOUT_INITIALIZING_MS);
-            return;
-        }
-
-        Packet packet;
-        boolean completed = false;
-
-        queue:
-        while ((packet = client.inQueue.poll()) != null) {
-
-            updateLastTime();
-
-            //ack only hello until full initialization
-            if (packet.header.isHello()) {
-                sendAck(packet);
-                continue;
-            }
-
-            if (packet.header.uid != 0 && packet.header.uid != uid) {
-                setUid(packet.header.uid);
-            }
-
-            for (Command cmd : packet.commands) {
-                if (cmd instanceof CmdInitializationComplete) {
-                    completed = true;
-                    continue;
+    private static ByteBuffer encode(Command[] commands) {
+        ByteBuffer buf = ByteBuffer.allocate(PacketHeader.MASK_SIZE);
+        buf.position(PacketHeader.HEADER_LENGTH);
+        try {
+            for (Command command : commands) {
+                if (command == null) {
+                    throw new IllegalArgumentException("command must be not null");
                 }
 
-                applyCommand(cmd);
-            }
-
-            if (completed) {
-                break;
+                try {
+                    command.write(buf);
+                } catch (UnsupportedOperationException ex) {
+                    throw new IllegalArgumentException(String.format(
+                            "command = %s can't be sent",
+                            command.getClass().getSimpleName()
+                    ), ex);
+                }
             }
+        } catch (BufferOverflowException ex) {
+            throw new IllegalArgumentException(String.format(
+                    "commands must fit in one packet of %d bytes",
+                    PacketHeader.MASK_SIZE
+            ));
         }
+        buf.flip();
 
-        if (completed) {
-            log.info("initialization complete");
-            toWorking();
-        }
-    }
-
-    protected void doConnecting() throws IOException, StateTimeoutException {
-
-        if (client.inQueue.isEmpty()) {
-            checkLastTimeout(TIMEOUT_CONNECTING_MS);
-            return;
-        }
-
-        Packet packet;
-
-        queue:
-        while ((packet = client.inQueue.poll()) != null) {
-
-            updateLastTime();
+        // uid and packageId are patched on sending
+        new PacketHeader(PacketHeader.FLAG_ACKREQ, buf.limit(), 0, 0, 0, 0).write(buf);
+        buf.rewind();
 
-            if (!packet.header.isHello()) {
-                log.debug(String.format("ignoring packet on connecting: %s", packet));
-            }
+        ByteBuffer datagram = ByteBuffer.allocate(buf.limit());
+        datagram.put(buf);
+        datagram.flip();
+        return datagram;
+    }
 
-            sendAck(packet);
-            toInitializing();
+    private void sendPackage(ByteBuffer datagram) throws IOException {
+        if (client == null) {
             return;
         }
 
-        if (isMarkerTime()) {
-            resendHello();
-            setMarkerItme(TIMEOUT_HELLO_MS);
+        datagram.putChar(OFFSET_UID, (char) uid);
+        try {
+            client.send(datagram);
+        } catch (PortUnreachableException ex) {
+            logUnreachable();
         }
     }
 
-    protected void doRecovering() throws IOException, StateTimeoutException {
-
-        if (!client.inQueue.isEmpty()) {
-            toWorking();
-            return;
+    /**
+     * @return false if the client is not attached to a scheduler
+     */
+    private boolean runOnScheduler(Runnable task) {
+        AtemScheduler current = scheduler;
+        if (current == null) {
+            return false;
         }
 
-        checkLastTimeout(TIMEOUT_RECOVERING_MS);
-
-        if (isMarkerTime()) {
-            resendLastAckRequest();
-            setMarkerItme(TIMEOUT_ACKREQ_MS);
+        if (current.isInSchedulerThread()) {
+            task.run();
+        } else {
+            current.execute(task);
         }
+        return true;
     }
 
-    protected void doSleeping() throws IOException {
-        // closing client
-        if (client != null) {
-            if (client.channel.isOpen()) {
-                log.debug("waiting for channel");
-                return;
-            } else {
-                log.debug("channel is closed, clearing client");
-                client = null;
-                udpThread = null; // todo: wait for thread
+    /**
+     * Asks to resend the package, the id is carried in the upper half of the unicorn field.
+     */
+    protected void sendRetransmitRequest(int atemPackageId) throws IOException {
+        try {
+            PacketHeader header = new PacketHeader(
+                    PacketHeader.FLAG_RETRANSMIT_REQUEST,
+                    PacketHeader.HEADER_LENGTH,
+                    uid,
+                    0,
+                    0,
+                    (long) atemPackageId << 16
+            );
+            client.send(new Packet(header));
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("requesting retransmit of packageId = %d", atemPackageId));
             }
+        } catch (PortUnreachableException ex) {
+            logUnreachable();
         }
+    }
 
-        if (isMarkerTime()) {
-            toConnecting();
+    private void logUnreachable() {
+        if (log.isTraceEnabled()) {
+            log.trace(String.format("atem %s is unreachable", client.atemAddress));
         }
     }
 
     protected void updateLastTime() {
-        lastTime = System.currentTimeMillis();
-        log.debug(String.format("update last time to %d", lastTime));
+        lastTime = System.nanoTime();
     }
 
-    protected void setMarkerItme(long offset) {
-        markerTime = System.currentTimeMillis() + offset;
+    @Override
+    public void onPacketReceived(Packet packet) {
+        if (log.isTraceEnabled()) {
+            log.trace(String.format("onPacketReceived %s", packet.toString()));
+        }
     }
 
-    protected boolean isMarkerTime() {
-        if (markerTime == 0) {
-            return false;
+    @Override
+    public void onBatchReceived(int packets) {
+        DecodeStage.Session session = decodeSession;
+        if (session != null) {
+            session.schedule();
+        } else {
+            wakeup();
         }
-
-        return markerTime < System.currentTimeMillis();
     }
 
-    public boolean isLastTimeout(long timeout) {
-        return lastTime == 0 ? false : System.currentTimeMillis() > lastTime + timeout;
-    }
+    @Override
+    public void onSequenceGap(int firstMissing, int count) {
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("%d packages are missing from packageId = %d", count, firstMissing));
+        }
 
-    public void checkLastTimeout(long timeout) throws StateTimeoutException {
-        if (isLastTimeout(timeout)) {
-            log.debug(String.format(
-                    "last timeout check is failed, last time = %d, current time = %d, timeout = %d",
-                    lastTime,
-                    System.currentTimeMillis(),
-                    timeout
-            ));
-            throw new StateTimeoutException("timeout on state %s", state);
+        AtemScheduler current = scheduler;
+        if (!isRequestingRetransmits || current == null) {
+            return;
+        }
+
+        if (current.isInSchedulerThread()) {
+            requestRetransmit(firstMissing);
+        } else {
+            // decoded on a worker of the decode stage
+            current.execute(() -> requestRetransmit(firstMissing));
         }
     }
 
-    @Override
-    public void onPacketReceived(Packet packet) {
-        log.trace(String.format("onPacketReceived %s", packet.toString()));
+    private void requestRetransmit(int atemPackageId) {
+        if (client == null || (state != State.WORKING && state != State.RECOVERING)) {
+            return;
+        }
+
+        try {
+            sendRetransmitRequest(atemPackageId);
+        } catch (IOException ex) {
+            log.error("socket error", ex);
+        }
     }
 
     @Override
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.concurrent.HashedTimerWheel;
+import io.maritimus.atem4j.protocol.concurrent.IWaitStrategy;
+import io.maritimus.atem4j.protocol.concurrent.StageMetrics;
+import io.maritimus.atem4j.protocol.concurrent.WaitStrategyType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs the state machines of many {@link AtemClient}s on one thread.
+ *
+ * Clients are driven by events only: a client is processed when its udp client has received packets
+ * or when one of its timers in the shared {@link HashedTimerWheel} is due. Between events the thread
+ * waits by its wait strategy.
+ */
+public class AtemScheduler implements Runnable, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(AtemScheduler.class);
+
+    public static final long MAX_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    public final HashedTimerWheel timers = new HashedTimerWheel();
+
+    /** packets applied by the clients */
+    public final StageMetrics applyMetrics = new StageMetrics("apply");
+
+    private final IWaitStrategy waitStrategy;
+    private final boolean stopWhenEmpty;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<AtemClient> ready = new ConcurrentLinkedQueue<>();
+    private final BooleanSupplier hasWork = () -> !tasks.isEmpty() || !ready.isEmpty();
+
+    private volatile Thread thread = null;
+    private volatile boolean isStopped = false;
+    private int clients = 0;
+
+    /**
+     * Creates a shared scheduler running on its own daemon thread.
+     */
+    public static AtemScheduler create() {
+        return create(WaitStrategyType.BLOCKING);
+    }
+
+    public static AtemScheduler create(@NotNull WaitStrategyType waitStrategy) {
+        AtemScheduler scheduler = new AtemScheduler(waitStrategy, false);
+        Thread thread = new Thread(scheduler, "atem-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+        return scheduler;
+    }
+
+    /**
+     * @param stopWhenEmpty stop running after the last client is removed
+     */
+    public AtemScheduler(@NotNull WaitStrategyType waitStrategy, boolean stopWhenEmpty) {
+        if (waitStrategy == null) {
+            throw new IllegalArgumentException("waitStrategy must be not null");
+        }
+
+        this.waitStrategy = waitStrategy.create();
+        this.stopWhenEmpty = stopWhenEmpty;
+    }
+
+    /**
+     * Starts driving the client, may be called from any thread.
+     */
+    public void add(@NotNull AtemClient client) {
+        if (client == null) {
+            throw new IllegalArgumentException("client must be not null");
+        }
+
+        execute(() -> {
+            clients++;
+            client.attach(this);
+        });
+    }
+
+    /**
+     * Runs the task on the scheduler thread.
+     */
+    public void execute(@NotNull Runnable task) {
+        tasks.add(task);
+        waitStrategy.signal();
+    }
+
+    public boolean isInSchedulerThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    @Override
+    public void close() {
+        isStopped = true;
+        waitStrategy.signal();
+    }
+
+    void wakeup(AtemClient client) {
+        if (client.isReady.compareAndSet(false, true)) {
+            ready.add(client);
+            waitStrategy.signal();
+        }
+    }
+
+    void remove(AtemClient client) {
+        clients--;
+        if (stopWhenEmpty && clients <= 0) {
+            isStopped = true;
+        }
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        try {
+            while (!isStopped) {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    runSafely(task);
+                }
+
+                AtemClient client;
+                while ((client = ready.poll()) != null) {
+                    client.isReady.set(false);
+                    try {
+                        client.onPacketsReady();
+                    } catch (RuntimeException ex) {
+                        log.error("client processing is failed", ex);
+                    }
+                }
+
+                timers.expire(System.nanoTime());
+
+                if (isStopped) {
+                    break;
+                }
+
+                waitStrategy.await(hasWork, timers.nanosToNextExpiry(System.nanoTime(), MAX_WAIT_NANOS));
+            }
+        } catch (InterruptedException ex) {
+            log.debug("scheduler is interrupted", ex);
+        } finally {
+            thread = null;
+        }
+
+        log.debug("scheduler is done");
+    }
+
+    private static void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException ex) {
+            log.error("scheduled task is failed", ex);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+/**
+ * What a {@link ListenerSubscription} does with events while its listener falls behind.
+ */
+public enum ConflationPolicy {
+    /** a full mailbox rejects new events */
+    DROP_NEWEST,
+
+    /** a full mailbox drops its oldest event */
+    DROP_OLDEST,
+
+    /**
+     * a new event replaces the pending event of the same kind, e.g. program 3 replaces pending
+     * program 2 and two pending tally changes are merged, a full mailbox drops its oldest event
+     */
+    CONFLATE
+}
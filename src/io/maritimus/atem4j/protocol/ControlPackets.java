@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pre-encoded control packets of a session: ACK, ACKREQ and hello.
+ *
+ * Templates are encoded once per uid, sending patches the id in place and hands the buffer to
+ * {@link io.maritimus.atem4j.protocol.udp.UdpClient#send(ByteBuffer)}, so nothing is allocated.
+ * Belongs to the thread driving the session.
+ */
+public final class ControlPackets {
+
+    private static final int OFFSET_ACK_ID = 4;
+    private static final int OFFSET_PACKAGE_ID = 10;
+
+    private final ByteBuffer ack = ByteBuffer.allocateDirect(PacketHeader.HEADER_LENGTH);
+    private final ByteBuffer ackRequest = ByteBuffer.allocateDirect(PacketHeader.HEADER_LENGTH);
+    private final ByteBuffer resendAckRequest = ByteBuffer.allocateDirect(PacketHeader.HEADER_LENGTH);
+    private final ByteBuffer hello;
+    private final ByteBuffer resendHello;
+
+    private int uid = -1;
+
+    public ControlPackets(int uid) {
+        hello = ByteBuffer.allocateDirect(PacketHello.createClientFirstHello(0).header.size);
+        resendHello = ByteBuffer.allocateDirect(PacketHello.createClientResendHello(0).header.size);
+        setUid(uid);
+    }
+
+    public int getUid() {
+        return uid;
+    }
+
+    /**
+     * Re-encodes the templates for the uid, a no-op for the same uid.
+     */
+    public void setUid(int uid) {
+        if (this.uid == uid) {
+            return;
+        }
+
+        this.uid = uid;
+        encode(ack, new Packet(header(PacketHeader.FLAG_ACK, uid)));
+        encode(ackRequest, new Packet(header(PacketHeader.FLAG_ACKREQ, uid)));
+        encode(resendAckRequest, new Packet(header(PacketHeader.FLAG_ACKREQ | PacketHeader.FLAG_RESEND, uid)));
+        encode(hello, PacketHello.createClientFirstHello(uid));
+        encode(resendHello, PacketHello.createClientResendHello(uid));
+    }
+
+    public ByteBuffer ack(int ackId) {
+        return patch(ack, OFFSET_ACK_ID, ackId);
+    }
+
+    public ByteBuffer ackRequest(int packageId) {
+        return patch(ackRequest, OFFSET_PACKAGE_ID, packageId);
+    }
+
+    public ByteBuffer resendAckRequest(int packageId) {
+        return patch(resendAckRequest, OFFSET_PACKAGE_ID, packageId);
+    }
+
+    public ByteBuffer hello() {
+        hello.rewind();
+        return hello;
+    }
+
+    public ByteBuffer resendHello() {
+        resendHello.rewind();
+        return resendHello;
+    }
+
+    private static ByteBuffer patch(ByteBuffer template, int offset, int id) {
+        template.putChar(offset, (char) id);
+        template.rewind();
+        return template;
+    }
+
+    private static PacketHeader header(int flags, int uid) {
+        return new PacketHeader(flags, PacketHeader.HEADER_LENGTH, uid, 0, 0, 0);
+    }
+
+    private static void encode(ByteBuffer template, Packet packet) {
+        template.clear();
+        packet.write(template);
+        template.flip();
+    }
+}
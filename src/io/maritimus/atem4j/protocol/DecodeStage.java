@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.concurrent.SpscRingBuffer;
+import io.maritimus.atem4j.protocol.concurrent.StageMetrics;
+import io.maritimus.atem4j.protocol.concurrent.VirtualThreads;
+import io.maritimus.atem4j.protocol.concurrent.WaitStrategyType;
+import io.maritimus.atem4j.protocol.udp.BufferPool;
+import io.maritimus.atem4j.protocol.udp.UdpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decodes received datagrams of many sessions on a pool of worker threads.
+ *
+ * The pipeline of a session is: the udp receiving thread moves bytes to the in queue of its
+ * {@link UdpClient}, a worker of this stage decodes them to packets, the scheduler thread applies
+ * the packets. A session is decoded by at most one worker at a time, so its packets keep their order
+ * while different sessions are decoded in parallel.
+ */
+public class DecodeStage implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(DecodeStage.class);
+
+    public static final int DECODED_CAPACITY = UdpClient.IN_QUEUE_CAPACITY;
+
+    public final StageMetrics metrics = new StageMetrics("decode");
+
+    private final ThreadPoolExecutor executor;
+
+    public static DecodeStage create() {
+        return new DecodeStage(Runtime.getRuntime().availableProcessors());
+    }
+
+    public static DecodeStage create(int threads) {
+        return new DecodeStage(threads);
+    }
+
+    public DecodeStage(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException(String.format("threads = %d must be positive", threads));
+        }
+
+        executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                VirtualThreads.newPlatformThreadFactory("atem-decode")
+        );
+    }
+
+    /**
+     * Opens the decoding of the client's datagrams.
+     *
+     * @param onDecoded called by a worker after a run has decoded something
+     */
+    public Session open(@NotNull UdpClient client, @NotNull Runnable onDecoded) {
+        if (client == null) {
+            throw new IllegalArgumentException("client must be not null");
+        }
+
+        if (onDecoded == null) {
+            throw new IllegalArgumentException("onDecoded must be not null");
+        }
+
+        return new Session(client, onDecoded);
+    }
+
+    /**
+     * @return amount of sessions waiting for a worker
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    public final class Session implements Runnable {
+        public final UdpClient client;
+
+        private final Runnable onDecoded;
+        private final SpscRingBuffer<Packet> decoded;
+        private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+        private volatile boolean isClosed = false;
+
+        Session(UdpClient client, Runnable onDecoded) {
+            this.client = client;
+            this.onDecoded = onDecoded;
+            this.decoded = new SpscRingBuffer<>(DECODED_CAPACITY, WaitStrategyType.BUSY_SPIN.create());
+        }
+
+        /**
+         * Schedules decoding of everything received, any thread.
+         */
+        public void schedule() {
+            if (isScheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    isScheduled.set(false);
+                    log.debug("decode stage is closed");
+                }
+            }
+        }
+
+        /**
+         * @return next decoded packet or null, applying thread only
+         */
+        public Packet poll() {
+            Packet packet = decoded.poll();
+            if (packet == null && !client.inQueue.isEmpty()) {
+                // decoding has stopped on a full queue
+                schedule();
+            }
+            return packet;
+        }
+
+        /**
+         * @return amount of decoded and not applied packets
+         */
+        public int size() {
+            return decoded.size();
+        }
+
+        /**
+         * Stops decoding, datagrams left in the udp client are released by a worker.
+         */
+        public void close() {
+            isClosed = true;
+            schedule();
+        }
+
+        @Override
+        public void run() {
+            do {
+                if (isClosed) {
+                    client.discardReceived();
+                    client.pool.reportLeaks(BufferPool.LEAK_AGE_NANOS);
+                    isScheduled.set(false);
+                    return;
+                }
+
+                long start = System.nanoTime();
+                int depth = client.inQueue.size();
+                int count = decode();
+                if (count > 0) {
+                    metrics.record(count, System.nanoTime() - start, depth);
+                    onDecoded.run();
+                }
+
+                isScheduled.set(false);
+
+                if (!isClosed && (client.inQueue.isEmpty() || decoded.size() >= decoded.capacity)) {
+                    return;
+                }
+                // more is received or closed meanwhile, continue if nobody else has rescheduled
+            } while (isScheduled.compareAndSet(false, true));
+        }
+
+        private int decode() {
+            // the applying thread only makes the queue shorter, so the free space is never overestimated
+            int free = decoded.capacity - decoded.size();
+            int count = 0;
+            Packet packet;
+            while (count < free && (packet = client.poll()) != null) {
+                decoded.stage(packet);
+                count++;
+            }
+            decoded.flush();
+            return count;
+        }
+    }
+}
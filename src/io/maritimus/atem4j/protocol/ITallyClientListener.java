@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import io.maritimus.atem4j.protocol.tally.TallyDelta;
+import io.maritimus.atem4j.protocol.tally.TallyTable;
+
+/**
+ * Typed events of a {@link TallyClient}, delivered through a {@link ListenerSubscription},
+ * never on the protocol thread. Override the events of interest only.
+ */
+public interface ITallyClientListener {
+
+    default void onStateChanged(TallyClient client, AtemClient.State state) {
+    }
+
+    /**
+     * @param delta changed sources, conflated events deliver the sum of the changes
+     */
+    default void onTallyChanged(TallyClient client, TallyDelta delta, TallyTable table) {
+    }
+
+    default void onProgramChanged(TallyClient client, int programIndex) {
+    }
+
+    default void onPreviewChanged(TallyClient client, int previewIndex) {
+    }
+
+    default void onInputRenamed(TallyClient client, int index, String shortName, String longName) {
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import com.sun.istack.internal.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tracks package ids of the ack requesting packets of a session over the last {@link #WINDOW} ids.
+ *
+ * Runs on the decoding thread before the commands are decoded, so a duplicate costs only the header
+ * peek. Counters are written by that thread only and may be read from any thread.
+ */
+public class InboundSequenceWindow {
+
+    public static final int WINDOW = 64;
+
+    public static final int ACCEPTED = 0;
+    public static final int DUPLICATE = 1;
+    public static final int GAP = 2;        // accepted, some ids before it are missing
+    public static final int LATE = 3;       // accepted, fills a gap
+
+    private static final int MASK_PACKAGE_ID = 0x7FFF;
+    private static final int HALF_PACKAGE_IDS = 0x4000;
+    private static final int OFFSET_PACKAGE_ID = 10;
+
+    private int highest = -1;
+    private long seen = 0;          // bit j is id highest - j
+    private long gaps = 0;          // ids skipped by a gap and not received yet
+
+    private int gapStart = 0;
+    private int gapLength = 0;
+
+    private volatile long accepted = 0;
+    private volatile long duplicates = 0;
+    private volatile long missing = 0;
+    private volatile long late = 0;
+
+    /**
+     * Checks the raw datagram, position and limit are kept. Packets without an ack request
+     * carry no package id and are always accepted.
+     *
+     * @return {@link #ACCEPTED}, {@link #DUPLICATE}, {@link #GAP} or {@link #LATE}
+     */
+    public int accept(@NotNull ByteBuffer datagram) {
+        int pos = datagram.position();
+        if (datagram.remaining() < PacketHeader.HEADER_LENGTH) {
+            return ACCEPTED;
+        }
+
+        int bitmask = (datagram.get(pos) & 0xFF) & PacketHeader.MASK_BITMASK;
+        if ((bitmask & PacketHeader.FLAG_ACKREQ) == 0 || (bitmask & PacketHeader.FLAG_HELLO) != 0) {
+            return ACCEPTED;
+        }
+
+        return accept(datagram.getChar(pos + OFFSET_PACKAGE_ID) & MASK_PACKAGE_ID);
+    }
+
+    public int accept(int packageId) {
+        if (highest < 0) {
+            highest = packageId;
+            seen = 1;
+            gaps = 0;
+            accepted = accepted + 1;
+            return ACCEPTED;
+        }
+
+        int ahead = (packageId - highest) & MASK_PACKAGE_ID;
+        if (ahead != 0 && ahead < HALF_PACKAGE_IDS) {
+            seen = ahead >= WINDOW ? 1 : (seen << ahead) | 1;
+            gaps = ahead >= WINDOW ? 0 : gaps << ahead;
+            accepted = accepted + 1;
+
+            if (ahead == 1) {
+                highest = packageId;
+                return ACCEPTED;
+            }
+
+            gaps |= ahead >= WINDOW ? ~1L : ((1L << ahead) - 1) & ~1L;
+            gapStart = (highest + 1) & MASK_PACKAGE_ID;
+            gapLength = ahead - 1;
+            highest = packageId;
+            missing = missing + gapLength;
+            return GAP;
+        }
+
+        int behind = (highest - packageId) & MASK_PACKAGE_ID;
+        if (behind >= WINDOW) {
+            // too old to tell, let it through as before
+            accepted = accepted + 1;
+            late = late + 1;
+            return LATE;
+        }
+
+        long bit = 1L << behind;
+        if ((seen & bit) != 0) {
+            duplicates = duplicates + 1;
+            return DUPLICATE;
+        }
+
+        seen |= bit;
+        accepted = accepted + 1;
+        late = late + 1;
+        if ((gaps & bit) != 0) {
+            gaps &= ~bit;
+            missing = missing - 1;
+        }
+        return LATE;
+    }
+
+    /**
+     * @return first missing id of the last {@link #GAP}
+     */
+    public int getGapStart() {
+        return gapStart;
+    }
+
+    /**
+     * @return amount of missing ids of the last {@link #GAP}
+     */
+    public int getGapLength() {
+        return gapLength;
+    }
+
+    /**
+     * @return highest id with no missing id before it in the window, -1 if nothing is accepted
+     */
+    public int getContiguous() {
+        if (highest < 0) {
+            return -1;
+        }
+
+        if (gaps == 0) {
+            return highest;
+        }
+
+        int oldestMissing = 63 - Long.numberOfLeadingZeros(gaps);
+        return (highest - oldestMissing - 1) & MASK_PACKAGE_ID;
+    }
+
+    public void reset() {
+        highest = -1;
+        seen = 0;
+        gaps = 0;
+        gapLength = 0;
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return ids skipped and not received yet
+     */
+    public long getMissing() {
+        return missing;
+    }
+
+    /**
+     * @return packets received after a higher id, resent or reordered
+     */
+    public long getLate() {
+        return late;
+    }
+
+    public double getLossRate() {
+        return rate(missing, accepted + missing);
+    }
+
+    public double getDuplicateRate() {
+        return rate(duplicates, accepted + duplicates);
+    }
+
+    public double getReorderRate() {
+        return rate(late, accepted);
+    }
+
+    private static double rate(long count, long total) {
+        return total <= 0 ? 0.0 : (double) count / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("InboundSequenceWindow accepted=%d duplicates=%d missing=%d late=%d",
+                accepted, duplicates, missing, late);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map with primitive int keys, no boxing on lookup. Not thread safe.
+ */
+public class IntObjectMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int size = 0;
+
+    public IntObjectMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 2) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    public IntObjectMap(IntObjectMap<V> other) {
+        keys = Arrays.copyOf(other.keys, other.keys.length);
+        values = Arrays.copyOf(other.values, other.values.length);
+        mask = other.mask;
+        size = other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        for (int j = Utils.mixHash(key) & mask; ; j = (j + 1) & mask) {
+            Object value = values[j];
+            if (value == null) {
+                return null;
+            }
+            if (keys[j] == key) {
+                return (V) value;
+            }
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return previous value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value must be not null");
+        }
+
+        int j = Utils.mixHash(key) & mask;
+        for (; values[j] != null; j = (j + 1) & mask) {
+            if (keys[j] == key) {
+                V previous = (V) values[j];
+                values[j] = value;
+                return previous;
+            }
+        }
+
+        keys[j] = key;
+        values[j] = value;
+        size++;
+
+        if (size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * @return removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int j = Utils.mixHash(key) & mask;
+        for (; values[j] != null; j = (j + 1) & mask) {
+            if (keys[j] == key) {
+                V removed = (V) values[j];
+                values[j] = null;
+                size--;
+                // re-insert the rest of the cluster to keep the probe chains unbroken
+                for (int k = (j + 1) & mask; values[k] != null; k = (k + 1) & mask) {
+                    int rehashKey = keys[k];
+                    Object rehashValue = values[k];
+                    values[k] = null;
+                    size--;
+                    put(rehashKey, (V) rehashValue);
+                }
+                return removed;
+            }
+        }
+        return null;
+    }
+
+    public int[] keys() {
+        int[] result = new int[size];
+        int k = 0;
+        for (int j = 0; j < keys.length; j++) {
+            if (values[j] != null) {
+                result[k++] = keys[j];
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        size = 0;
+
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != null) {
+                put(oldKeys[j], (V) oldValues[j]);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.concurrent.VirtualThreads;
+import io.maritimus.atem4j.protocol.tally.TallyDelta;
+import io.maritimus.atem4j.protocol.tally.TallyTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Bounded mailbox of one {@link ITallyClientListener}.
+ *
+ * The protocol thread only appends events, the listener is called on the executor one event at
+ * a time, so a slow listener delays nobody but itself. What happens while it falls behind is
+ * up to the {@link ConflationPolicy}.
+ */
+public final class ListenerSubscription implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ListenerSubscription.class);
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    static final int KIND_STATE = 1;
+    static final int KIND_TALLY = 2;
+    static final int KIND_PROGRAM = 3;
+    static final int KIND_PREVIEW = 4;
+    static final int KIND_RENAME = 5;
+
+    private static Executor defaultExecutor = null;
+
+    public final ITallyClientListener listener;
+    public final ConflationPolicy policy;
+    public final int capacity;
+
+    private final TallyClient client;
+    private final Executor executor;
+    private final ArrayDeque<Event> queue;      // guarded by lock
+    private final Runnable drain = this::drain;
+
+    // not synchronized, the posting protocol thread may be virtual
+    private final ReentrantLock lock = new ReentrantLock();
+    private boolean isScheduled = false;        // guarded by lock
+    private volatile boolean isClosed = false;
+    private volatile long dropped = 0;
+    private volatile long conflated = 0;
+
+    /**
+     * @return shared executor of the subscriptions, see {@link VirtualThreads#newThreadPerTaskExecutor(String)},
+     *         it holds no idle threads, so there is nothing to shut down
+     */
+    public static synchronized Executor getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = VirtualThreads.newThreadPerTaskExecutor("atem-listener");
+        }
+        return defaultExecutor;
+    }
+
+    ListenerSubscription(@NotNull TallyClient client,
+                         @NotNull ITallyClientListener listener,
+                         @NotNull Executor executor,
+                         int capacity,
+                         @NotNull ConflationPolicy policy) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener must be not null");
+        }
+
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must be not null");
+        }
+
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must be not null");
+        }
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException(String.format("capacity = %d must be positive", capacity));
+        }
+
+        this.client = client;
+        this.listener = listener;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.queue = new ArrayDeque<>(Math.min(capacity, DEFAULT_CAPACITY));
+    }
+
+    /**
+     * @return events lost because the mailbox was full
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return events merged into a pending event
+     */
+    public long getConflated() {
+        return conflated;
+    }
+
+    public int getPending() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    /**
+     * Stops the delivery, pending events are discarded.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        client.unsubscribe(this);
+        lock.lock();
+        try {
+            queue.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void post(Event event) {
+        if (isClosed) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (policy == ConflationPolicy.CONFLATE && conflate(event)) {
+                conflated++;
+                return;
+            }
+
+            if (queue.size() >= capacity) {
+                dropped++;
+                if (policy == ConflationPolicy.DROP_NEWEST) {
+                    return;
+                }
+                queue.pollFirst();
+            }
+
+            queue.addLast(event);
+            if (isScheduled) {
+                return;
+            }
+            isScheduled = true;
+        } finally {
+            lock.unlock();
+        }
+
+        schedule();
+    }
+
+    private boolean conflate(Event event) {
+        Iterator<Event> iterator = queue.descendingIterator();
+        while (iterator.hasNext()) {
+            Event pending = iterator.next();
+            if (pending.kind == event.kind && pending.key == event.key) {
+                iterator.remove();
+                queue.addLast(pending.merge(event));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void schedule() {
+        try {
+            executor.execute(drain);
+        } catch (RejectedExecutionException ex) {
+            log.error("listener executor rejected the delivery", ex);
+            lock.lock();
+            try {
+                isScheduled = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void drain() {
+        // a burst of capacity events at most, then back to the executor, so listeners share it fairly
+        for (int count = 0; count < capacity; count++) {
+            Event event;
+            lock.lock();
+            try {
+                event = isClosed ? null : queue.pollFirst();
+                if (event == null) {
+                    isScheduled = false;
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                event.dispatch(client, listener);
+            } catch (RuntimeException ex) {
+                log.error("listener is failed", ex);
+            }
+        }
+
+        schedule();
+    }
+
+    /**
+     * Immutable event, shared by all subscriptions of a client.
+     */
+    static class Event {
+        final int kind;
+        final int key;
+        private final BiConsumer<TallyClient, ITallyClientListener> call;
+
+        Event(int kind, int key, BiConsumer<TallyClient, ITallyClientListener> call) {
+            this.kind = kind;
+            this.key = key;
+            this.call = call;
+        }
+
+        void dispatch(TallyClient client, ITallyClientListener listener) {
+            call.accept(client, listener);
+        }
+
+        /**
+         * @return event delivering both this and the newer one
+         */
+        Event merge(Event newer) {
+            return newer;
+        }
+    }
+
+    /**
+     * Tally change, the delta is computed on delivery, merged events span both changes.
+     */
+    static final class TallyEvent extends Event {
+        final TallyTable previous;
+        final TallyTable current;
+
+        TallyEvent(TallyTable previous, TallyTable current) {
+            super(KIND_TALLY, 0, null);
+            this.previous = previous;
+            this.current = current;
+        }
+
+        @Override
+        void dispatch(TallyClient client, ITallyClientListener listener) {
+            TallyDelta delta = TallyDelta.between(previous, current);
+            if (!delta.isEmpty()) {
+                listener.onTallyChanged(client, delta, current);
+            }
+        }
+
+        @Override
+        Event merge(Event newer) {
+            return new TallyEvent(previous, ((TallyEvent) newer).current);
+        }
+    }
+}
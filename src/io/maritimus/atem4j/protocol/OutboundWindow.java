@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.concurrent.HashedTimerWheel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.IntSupplier;
+
+/**
+ * Sliding window of ack requesting client packets.
+ *
+ * Up to {@link #getWindowSize()} packets are in flight, each one is resent with
+ * {@link PacketHeader#FLAG_RESEND} by its own timer, backing off from the initial timeout or the
+ * retransmit timeout of the {@link RttEstimator}, until
+ * the ACK with its package id is received or the attempts are exhausted. Packets beyond the window
+ * wait in a queue. Belongs to the scheduler thread of the timer wheel.
+ */
+public class OutboundWindow {
+
+    public static final int DEFAULT_WINDOW_SIZE = 16;
+    public static final int MAX_WINDOW_SIZE = 1024;
+    public static final int DEFAULT_MAX_ATTEMPTS = 8;
+    public static final long DEFAULT_INITIAL_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    public static final long DEFAULT_MAX_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(1600);
+
+    private static final int OFFSET_PACKAGE_ID = 10;
+    private static final int MASK_PACKAGE_ID = 0x7FFF;
+    private static final int HALF_PACKAGE_IDS = 0x4000;
+
+    @FunctionalInterface
+    public interface IPackageSender {
+        /**
+         * Sends the datagram from its position to its limit, the position may be moved.
+         */
+        void sendPackage(ByteBuffer datagram) throws IOException;
+    }
+
+    private final HashedTimerWheel timers;
+    private final IntSupplier packageIds;
+    private final IPackageSender sender;
+    private final ArrayDeque<Queued> queue = new ArrayDeque<>();
+
+    private InFlight[] slots = new InFlight[0];
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long initialTimeoutNanos = DEFAULT_INITIAL_TIMEOUT_NANOS;
+    private long maxTimeoutNanos = DEFAULT_MAX_TIMEOUT_NANOS;
+    private RttEstimator rtt = null;
+    private boolean isOpen = false;
+    private int inFlight = 0;
+
+    private long sent = 0;
+    private long resent = 0;
+    private long acked = 0;
+    private long failed = 0;
+
+    /**
+     * @param packageIds next client package id
+     */
+    public OutboundWindow(@NotNull HashedTimerWheel timers, @NotNull IntSupplier packageIds,
+                          @NotNull IPackageSender sender) {
+        if (timers == null) {
+            throw new IllegalArgumentException("timers must be not null");
+        }
+
+        if (packageIds == null) {
+            throw new IllegalArgumentException("packageIds must be not null");
+        }
+
+        if (sender == null) {
+            throw new IllegalArgumentException("sender must be not null");
+        }
+
+        this.timers = timers;
+        this.packageIds = packageIds;
+        this.sender = sender;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * A smaller window lets the packets in flight finish, but sends nothing new until they fit.
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1 || windowSize > MAX_WINDOW_SIZE) {
+            throw new IllegalArgumentException(String.format(
+                    "windowSize = %d must be in 1..%d",
+                    windowSize,
+                    MAX_WINDOW_SIZE
+            ));
+        }
+
+        this.windowSize = windowSize;
+        pump();
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException(String.format("maxAttempts = %d must be positive", maxAttempts));
+        }
+
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @param initialTimeoutNanos timeout of the first attempt, doubled by every resend
+     * @param maxTimeoutNanos upper bound of the doubled timeout
+     */
+    public void setTimeouts(long initialTimeoutNanos, long maxTimeoutNanos) {
+        if (initialTimeoutNanos <= 0 || maxTimeoutNanos < initialTimeoutNanos) {
+            throw new IllegalArgumentException(String.format(
+                    "initialTimeoutNanos = %d must be positive and not above maxTimeoutNanos = %d",
+                    initialTimeoutNanos,
+                    maxTimeoutNanos
+            ));
+        }
+
+        this.initialTimeoutNanos = initialTimeoutNanos;
+        this.maxTimeoutNanos = maxTimeoutNanos;
+    }
+
+    public RttEstimator getRttEstimator() {
+        return rtt;
+    }
+
+    /**
+     * Takes the first timeout of every packet from the estimator and feeds it with the round trips
+     * of packets acknowledged without a resend. Null returns back to the initial timeout.
+     */
+    public void setRttEstimator(RttEstimator rtt) {
+        this.rtt = rtt;
+    }
+
+    /**
+     * Queues an encoded ack requesting packet, its package id is assigned when it is sent.
+     *
+     * @param datagram header and commands, owned by the window from now on
+     * @param future completed by the ACK
+     */
+    public void submit(@NotNull ByteBuffer datagram, @NotNull CompletableFuture<Void> future) {
+        if (datagram == null) {
+            throw new IllegalArgumentException("datagram must be not null");
+        }
+
+        if (future == null) {
+            throw new IllegalArgumentException("future must be not null");
+        }
+
+        queue.add(new Queued(datagram, future));
+        pump();
+    }
+
+    /**
+     * Starts sending queued packets, when the session is working.
+     */
+    public void open() {
+        isOpen = true;
+        pump();
+    }
+
+    /**
+     * Stops sending and fails everything in flight and queued, when the session is gone.
+     */
+    public void close(@NotNull Throwable cause) {
+        isOpen = false;
+
+        for (InFlight slot : slots) {
+            if (slot.future != null) {
+                fail(slot, cause);
+            }
+        }
+
+        Queued queued;
+        while ((queued = queue.poll()) != null) {
+            failed++;
+            queued.future.completeExceptionally(cause);
+        }
+    }
+
+    public boolean isOpen() {
+        return isOpen;
+    }
+
+    /**
+     * Completes the packets acknowledged by the atem, an ACK covers every package up to its ackId.
+     * Unknown ids are ignored.
+     *
+     * @return true if a packet in flight is acknowledged
+     */
+    public boolean onAck(int ackId) {
+        if (inFlight == 0) {
+            return false;
+        }
+
+        int released = 0;
+        for (InFlight slot : slots) {
+            if (slot.future == null || ((ackId - slot.packageId) & MASK_PACKAGE_ID) >= HALF_PACKAGE_IDS) {
+                continue;
+            }
+
+            // only the acknowledged package itself is a clean round trip
+            if (rtt != null && slot.packageId == ackId && slot.attempts == 1) {
+                rtt.sample(System.nanoTime() - slot.sentNanos);
+            }
+
+            CompletableFuture<Void> future = slot.future;
+            release(slot);
+            acked++;
+            released++;
+            future.complete(null);
+        }
+
+        if (released == 0) {
+            return false;
+        }
+
+        pump();
+        return true;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public long getResent() {
+        return resent;
+    }
+
+    public long getAcked() {
+        return acked;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    private void pump() {
+        while (isOpen && inFlight < windowSize && !queue.isEmpty()) {
+            Queued queued = queue.poll();
+            InFlight slot = acquire();
+            slot.datagram = queued.datagram;
+            slot.future = queued.future;
+            slot.packageId = packageIds.getAsInt();
+            slot.attempts = 0;
+            slot.timeoutNanos = rtt != null
+                    ? Math.min(rtt.getRetransmitTimeoutNanos(), maxTimeoutNanos)
+                    : initialTimeoutNanos;
+            slot.datagram.putChar(OFFSET_PACKAGE_ID, (char) slot.packageId);
+            transmit(slot);
+        }
+    }
+
+    private void onTimeout(InFlight slot) {
+        if (slot.future == null) {
+            return;
+        }
+
+        if (slot.attempts >= maxAttempts) {
+            fail(slot, new TimeoutException(String.format(
+                    "packageId = %d is not acknowledged after %d attempts",
+                    slot.packageId,
+                    slot.attempts
+            )));
+            pump();
+            return;
+        }
+
+        ByteBuffer datagram = slot.datagram;
+        datagram.put(0, (byte) (datagram.get(0) | PacketHeader.FLAG_RESEND));
+        slot.timeoutNanos = Math.min(slot.timeoutNanos * 2, maxTimeoutNanos);
+        resent++;
+        transmit(slot);
+    }
+
+    private void transmit(InFlight slot) {
+        slot.attempts++;
+        sent++;
+        slot.sentNanos = System.nanoTime();
+        timers.scheduleAt(slot.timer, slot.sentNanos + slot.timeoutNanos);
+
+        try {
+            slot.datagram.rewind();
+            sender.sendPackage(slot.datagram);
+        } catch (IOException ex) {
+            // lost like any other datagram, the timer resends it
+        }
+    }
+
+    private void fail(InFlight slot, Throwable cause) {
+        CompletableFuture<Void> future = slot.future;
+        release(slot);
+        failed++;
+        future.completeExceptionally(cause);
+    }
+
+    private InFlight acquire() {
+        for (InFlight slot : slots) {
+            if (slot.future == null) {
+                inFlight++;
+                return slot;
+            }
+        }
+
+        InFlight[] grown = new InFlight[slots.length + 1];
+        System.arraycopy(slots, 0, grown, 0, slots.length);
+        InFlight slot = new InFlight();
+        grown[slots.length] = slot;
+        slots = grown;
+        inFlight++;
+        return slot;
+    }
+
+    private void release(InFlight slot) {
+        timers.cancel(slot.timer);
+        slot.datagram = null;
+        slot.future = null;
+        inFlight--;
+    }
+
+    private static final class Queued {
+        final ByteBuffer datagram;
+        final CompletableFuture<Void> future;
+
+        Queued(ByteBuffer datagram, CompletableFuture<Void> future) {
+            this.datagram = datagram;
+            this.future = future;
+        }
+    }
+
+    private final class InFlight {
+        final HashedTimerWheel.Timer timer = new HashedTimerWheel.Timer(() -> onTimeout(this));
+
+        ByteBuffer datagram = null;
+        CompletableFuture<Void> future = null;     // null when the slot is free
+        int packageId = 0;
+        int attempts = 0;
+        long timeoutNanos = 0;
+        long sentNanos = 0;
+    }
+}
@@ -18,6 +18,7 @@ package io.maritimus.atem4j.protocol;
 
 import com.sun.istack.internal.NotNull;
 import io.maritimus.atem4j.protocol.command.Command;
+import io.maritimus.atem4j.protocol.command.CommandReader;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -48,10 +49,22 @@ public class Packet {
     }
 
     public static Packet read(@NotNull ByteBuffer buf) throws ParseException {
+        return read(buf, CommandReader.DEFAULT);
+    }
+
+    /**
+     * Reads a packet, commands skipped by the reader are not in {@link #commands}.
+     * Views of the reader are valid until the next packet is read by it.
+     */
+    public static Packet read(@NotNull ByteBuffer buf, @NotNull CommandReader reader) throws ParseException {
         if (buf == null) {
             throw new IllegalArgumentException("buf must be not null");
         }
 
+        if (reader == null) {
+            throw new IllegalArgumentException("reader must be not null");
+        }
+
         try {
             PacketHeader header = PacketHeader.read(buf);
 
@@ -73,9 +86,13 @@ public class Packet {
                 return new PacketHello(header, connectionFlag, connectionUptime, payload);
             }
 
+            reader.reset();
             ArrayList<Command> commands = new ArrayList<>();
             while (buf.hasRemaining()) {
-                commands.add(Command.read(buf));
+                Command command = reader.read(buf);
+                if (command != null) {
+                    commands.add(command);
+                }
             }
             return new Packet(header, commands);
 
@@ -26,6 +26,7 @@ public class PacketHeader {
     public static final int HEADER_LENGTH = 12;
 
     public static final int FLAG_ACK    = 0b10000000; // send ACK for this package
+    public static final int FLAG_RETRANSMIT_REQUEST = 0b01000000; // resend the package given in the unicorn field
     public static final int FLAG_RESEND = 0b00100000; // this is an resend packet
     public static final int FLAG_HELLO  = 0b00010000; // this is an hello packet
     public static final int FLAG_ACKREQ = 0b00001000; // request acknowledge for this packet
@@ -75,6 +76,10 @@ public class PacketHeader {
         return (this.bitmask & FLAG_HELLO) != 0;
     }
 
+    public boolean isAck() {
+        return (this.bitmask & FLAG_ACK) != 0;
+    }
+
     public boolean isAckRequest () {
         return (this.bitmask & FLAG_ACKREQ) != 0;
     }
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Smoothed round trip time and its variance as TCP keeps them (RFC 6298).
+ *
+ * Samples come from exchanges that were not resent, an ACK of a resent packet is ambiguous
+ * (Karn's algorithm). Every expired retry doubles the retransmit timeout until the next sample.
+ * Updated by the scheduler thread, may be read from any thread.
+ */
+public class RttEstimator {
+
+    public static final long DEFAULT_INITIAL_RTO_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    public static final long DEFAULT_MIN_RTO_NANOS = TimeUnit.MILLISECONDS.toNanos(30);
+    public static final long DEFAULT_MAX_RTO_NANOS = TimeUnit.MILLISECONDS.toNanos(1500);
+
+    private static final long GRANULARITY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public final long initialRtoNanos;
+    public final long minRtoNanos;
+    public final long maxRtoNanos;
+
+    private volatile long srttNanos = 0;
+    private volatile long rttvarNanos = 0;
+    private volatile long rtoNanos;
+    private volatile long samples = 0;
+
+    public RttEstimator() {
+        this(DEFAULT_INITIAL_RTO_NANOS, DEFAULT_MIN_RTO_NANOS, DEFAULT_MAX_RTO_NANOS);
+    }
+
+    /**
+     * @param initialRtoNanos retransmit timeout until the first sample
+     * @param minRtoNanos floor of the retransmit timeout
+     * @param maxRtoNanos ceiling of the retransmit timeout
+     */
+    public RttEstimator(long initialRtoNanos, long minRtoNanos, long maxRtoNanos) {
+        if (minRtoNanos <= 0 || minRtoNanos > initialRtoNanos || initialRtoNanos > maxRtoNanos) {
+            throw new IllegalArgumentException(String.format(
+                    "must be 0 < minRtoNanos = %d <= initialRtoNanos = %d <= maxRtoNanos = %d",
+                    minRtoNanos,
+                    initialRtoNanos,
+                    maxRtoNanos
+            ));
+        }
+
+        this.initialRtoNanos = initialRtoNanos;
+        this.minRtoNanos = minRtoNanos;
+        this.maxRtoNanos = maxRtoNanos;
+        this.rtoNanos = initialRtoNanos;
+    }
+
+    public void sample(long rttNanos) {
+        if (rttNanos < 0) {
+            return;
+        }
+
+        long srtt = srttNanos;
+        long rttvar = rttvarNanos;
+        if (samples == 0) {
+            srtt = rttNanos;
+            rttvar = rttNanos / 2;
+        } else {
+            rttvar = rttvar - (rttvar >> 2) + (Math.abs(srtt - rttNanos) >> 2);
+            srtt = srtt - (srtt >> 3) + (rttNanos >> 3);
+        }
+
+        srttNanos = srtt;
+        rttvarNanos = rttvar;
+        rtoNanos = clamp(srtt + Math.max(GRANULARITY_NANOS, 4 * rttvar), minRtoNanos, maxRtoNanos);
+        samples = samples + 1;
+    }
+
+    /**
+     * Doubles the retransmit timeout after a retry has expired.
+     */
+    public void backoff() {
+        rtoNanos = Math.min(rtoNanos * 2, maxRtoNanos);
+    }
+
+    public long getRetransmitTimeoutNanos() {
+        return rtoNanos;
+    }
+
+    /**
+     * @return {@code base + multiplier * rto}, but within {@code floor..ceiling}
+     */
+    public long getTimeoutNanos(long baseNanos, int multiplier, long floorNanos, long ceilingNanos) {
+        return clamp(baseNanos + multiplier * rtoNanos, floorNanos, ceilingNanos);
+    }
+
+    /**
+     * @return smoothed rtt, 0 without samples
+     */
+    public long getSmoothedRttNanos() {
+        return srttNanos;
+    }
+
+    public long getRttVarianceNanos() {
+        return rttvarNanos;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RttEstimator srtt=%d us rttvar=%d us rto=%d us samples=%d",
+                TimeUnit.NANOSECONDS.toMicros(srttNanos),
+                TimeUnit.NANOSECONDS.toMicros(rttvarNanos),
+                TimeUnit.NANOSECONDS.toMicros(rtoNanos),
+                samples);
+    }
+}
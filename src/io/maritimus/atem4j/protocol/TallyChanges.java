@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.tally.InputTable;
+import io.maritimus.atem4j.protocol.tally.TallyDelta;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Difference between a version seen by a polling consumer and the current {@link TallySnapshot},
+ * see {@link TallyClient#changesSince(long)}. When the old version is not known any more the
+ * changes are full, the consumer must take the whole snapshot.
+ */
+public final class TallyChanges {
+
+    public final long sinceVersion;
+    public final TallySnapshot snapshot;
+    public final boolean isFull;
+
+    /** changed scalar fields by their json names */
+    public final Map<String, Object> fields;
+    public final TallyDelta tally;
+    /** renamed inputs */
+    public final int[] renamed;
+
+    static TallyChanges full(long sinceVersion, TallySnapshot snapshot) {
+        return new TallyChanges(sinceVersion, snapshot, true, Collections.emptyMap(), TallyDelta.EMPTY, new int[0]);
+    }
+
+    static TallyChanges between(@NotNull TallySnapshot old, @NotNull TallySnapshot current) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        put(fields, "host", old.host, current.host);
+        put(fields, "state", old.state == null ? null : old.state.name(), current.state == null ? null : current.state.name());
+        put(fields, "firmware", old.firmwareVersion, current.firmwareVersion);
+        put(fields, "product", old.productName, current.productName);
+        put(fields, "sources", old.sources, current.sources);
+        put(fields, "pgm", old.programIndex, current.programIndex);
+        put(fields, "prv", old.previewIndex, current.previewIndex);
+
+        return new TallyChanges(
+                old.version,
+                current,
+                false,
+                fields,
+                TallyDelta.between(old.table, current.table),
+                renamed(old, current)
+        );
+    }
+
+    private static void put(Map<String, Object> fields, String name, Object oldValue, Object newValue) {
+        if (!Objects.equals(oldValue, newValue)) {
+            fields.put(name, newValue == null ? JSONObject.NULL : newValue);
+        }
+    }
+
+    private static int[] renamed(TallySnapshot old, TallySnapshot current) {
+        InputTable oldInputs = old.inputs;
+        InputTable newInputs = current.inputs;
+        if (oldInputs == newInputs) {
+            return new int[0];
+        }
+
+        int[] renamed = new int[newInputs.size()];
+        int size = 0;
+        for (int j = 0; j < newInputs.size(); j++) {
+            int index = newInputs.sourceAt(j);
+            if (!newInputs.hasSameNames(index, oldInputs)) {
+                renamed[size++] = index;
+            }
+        }
+        return Arrays.copyOf(renamed, size);
+    }
+
+    private TallyChanges(long sinceVersion,
+                         TallySnapshot snapshot,
+                         boolean isFull,
+                         Map<String, Object> fields,
+                         TallyDelta tally,
+                         int[] renamed) {
+        this.sinceVersion = sinceVersion;
+        this.snapshot = snapshot;
+        this.isFull = isFull;
+        this.fields = fields;
+        this.tally = tally;
+        this.renamed = renamed;
+    }
+
+    public long getVersion() {
+        return snapshot.version;
+    }
+
+    public boolean isEmpty() {
+        return !isFull && fields.isEmpty() && tally.isEmpty() && renamed.length == 0;
+    }
+
+    /**
+     * @return compact changes, or the whole snapshot under "snapshot" when full
+     */
+    public JSONObject toJson() {
+        JSONObject retJson = new JSONObject();
+        retJson.
+                put("since", sinceVersion).
+                put("uuid", snapshot.version).
+                put("full", isFull);
+
+        if (isFull) {
+            return retJson.put("snapshot", snapshot.toJson());
+        }
+
+        if (!fields.isEmpty()) {
+            retJson.put("fields", new JSONObject(fields));
+        }
+
+        if (!tally.isEmpty()) {
+            JSONArray info = new JSONArray();
+            for (int j = 0; j < tally.size(); j++) {
+                int index = tally.sourceAt(j);
+                info.put(new JSONObject().
+                        put("index", index).
+                        put("pgm", snapshot.table.isOnProgram(index)).
+                        put("prv", snapshot.table.isOnPreview(index)));
+            }
+            retJson.put("tally", info);
+        }
+
+        if (renamed.length > 0) {
+            JSONArray names = new JSONArray();
+            for (int index : renamed) {
+                names.put(new JSONObject().
+                        put("index", index).
+                        put("name", snapshot.getShortName(index)).
+                        put("long", snapshot.getLongName(index)));
+            }
+            retJson.put("names", names);
+        }
+
+        return retJson;
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+}
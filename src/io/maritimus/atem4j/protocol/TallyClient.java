@@ -18,112 +18,235 @@ package io.maritimus.atem4j.protocol;
 
 import com.sun.istack.internal.NotNull;
 import io.maritimus.atem4j.protocol.command.*;
-import org.json.JSONArray;
+import io.maritimus.atem4j.protocol.tally.ITallyListener;
+import io.maritimus.atem4j.protocol.tally.InputTable;
+import io.maritimus.atem4j.protocol.tally.TallyDelta;
+import io.maritimus.atem4j.protocol.tally.TallyTable;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Created by Oleg Akimov on 02/08/15.
  */
 public class TallyClient extends AtemClient {
     private static final Logger log = LoggerFactory.getLogger(TallyClient.class);
-    private long uuid = 0;
+
+    /**
+     * Commands applied by {@link #applyCommand(Command)}, decoded alone by clients of {@link #create(InetSocketAddress)}.
+     * Subclasses decode every command unless they return this interest, or one extended by
+     * {@link CommandInterest#with(String...)}, from {@link #getCommandInterest()}.
+     */
+    public static final CommandInterest TALLY_INTEREST = CommandInterest.of(
+            "TlSr", "PrgI", "PrvI", "InPr", "_top", "_ver", "_pin"
+    );
+
+    /** snapshots kept for {@link #changesSince(long)}, a power of 2 */
+    public static final int HISTORY_SIZE = 256;
 
     private int sources = 0;
     private String firmwareVersion = "unknown";
     private String productName = "unknown";
-    private ConcurrentMap<Integer, String> shortNames = new ConcurrentHashMap<>(16);
-    private ConcurrentMap<Integer, String> longNames = new ConcurrentHashMap<>(16);
+    private final InputTable.Builder inputs = new InputTable.Builder();
     private int previewIndex = 0;
     private int programIndex = 0;
     private CmdTallyBySource tally = null;
+    private TallyTable table = TallyTable.EMPTY;
+    private final CopyOnWriteArrayList<ITallyListener> tallyListeners = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<ListenerSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // protocol thread only, changes of a packet are published by one snapshot
+    private boolean isApplying = false;
+    private boolean isDirty = false;
+    private boolean isInputsDirty = true;
+    private InputTable publishedInputs = null;
+    private volatile TallySnapshot snapshot;
+    final TallyJsonRenderer renderer = new TallyJsonRenderer();
+
+    // recent snapshots by version, the change log of changesSince
+    private final AtomicReferenceArray<TallySnapshot> history = new AtomicReferenceArray<>(HISTORY_SIZE);
+
+    // set by create(), subclasses keep the decoding and the command objects of AtemClient
+    private boolean isTallyOnly = false;
 
     public static TallyClient create(InetSocketAddress atemAddress) {
         TallyClient client = new TallyClient(atemAddress);
+        client.isTallyOnly = true;
         client.toStopped();
         return client;
     }
 
     protected TallyClient(InetSocketAddress atemAddress) {
         super(atemAddress);
+        snapshot = createSnapshot(0);
+        history.set(0, snapshot);
     }
 
-    public String getShortName(Integer index) {
-        return shortNames.getOrDefault(index, "?" + index);
+    public String getShortName(int index) {
+        return snapshot.getShortName(index);
     }
 
-    public String getLongName(Integer index) {
-        return shortNames.getOrDefault(index, "Input " + index);
+    public String getLongName(int index) {
+        return snapshot.getLongName(index);
     }
 
-    public JSONObject toJson() {
-        JSONObject retJson = new JSONObject();
-
-        JSONArray info = new JSONArray();
-
-        if (tally != null) {
-            for (int index : tally.getVideoSources()) {
-                JSONObject input = new JSONObject();
-                input.put("index", index).
-                        put("name", getShortName(index)).
-                        put("long", getLongName(index)).
-                        put("pgm", tally.isOnProgram(index)).
-                        put("prv", tally.isOnPreview(index));
-                info.put(input);
-            }
+    /**
+     * @return properties of the inputs, no boxing on lookups
+     */
+    public InputTable getInputs() {
+        return snapshot.inputs;
+    }
+
+    /**
+     * @return consistent state, a single volatile read
+     */
+    public TallySnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Changes since the given version of a former snapshot, full when the version is out of
+     * the last {@link #HISTORY_SIZE} versions.
+     */
+    public TallyChanges changesSince(long version) {
+        TallySnapshot current = snapshot;
+        if (version == current.version) {
+            return TallyChanges.between(current, current);
         }
 
-        retJson.
-                put("uuid", uuid).
-                put("rus", "Проверка").
-                put("host", getAtemHost()).
-                put("state", getState()).
-                put("firmware", firmwareVersion).
-                put("product", productName).
-                put("sources", sources).
-                put("pgm", programIndex).
-                put("prv", previewIndex).
-                put("tally", info);
+        TallySnapshot old = version < 0 || version > current.version
+                ? null
+                : history.get((int) version & (HISTORY_SIZE - 1));
 
-        return retJson;
+        if (old == null || old.version != version) {
+            return TallyChanges.full(version, current);
+        }
+
+        return TallyChanges.between(old, current);
+    }
+
+    /**
+     * Json of the current snapshot as UTF-8, rendered once per version and shared by all callers,
+     * so the array must not be modified.
+     */
+    public byte[] toJsonBytes() {
+        TallySnapshot current = snapshot;
+        byte[] json = current.json;
+        if (json == null) {
+            json = renderer.render(current);
+            current.json = json;
+        }
+        return json;
+    }
+
+    public void writeJson(@NotNull OutputStream out) throws IOException {
+        out.write(toJsonBytes());
+    }
+
+    public JSONObject toJson() {
+        return snapshot.toJson();
     }
 
     @Override
     public String toString() {
-        StringBuffer info = new StringBuffer();
-
-        if (tally != null) {
-            for (int index : tally.getVideoSources()) {
-                info.append(String.format(
-                        "\n\t\t%5d\t%5s\t%s%s\t(%s)",
-                        index,
-                        getShortName(index),
-                        tally.isOnProgram(index) ? " PGM" : "    ",
-                        tally.isOnPreview(index) ? " PRV" : "    ",
-                        getLongName(index)
-                ));
-            }
+        return snapshot.toString();
+    }
+
+    /**
+     * @return tally of every source with O(1) lookups by source id
+     */
+    public TallyTable getTallyTable() {
+        return snapshot.table;
+    }
+
+    /**
+     * Delivers the events to the listener on the shared listener executor, conflating them
+     * while the listener falls behind.
+     */
+    public ListenerSubscription subscribe(@NotNull ITallyClientListener listener) {
+        return subscribe(
+                listener,
+                ListenerSubscription.getDefaultExecutor(),
+                ListenerSubscription.DEFAULT_CAPACITY,
+                ConflationPolicy.CONFLATE
+        );
+    }
+
+    /**
+     * Delivers the events to the listener on the executor, one at a time.
+     *
+     * @param capacity pending events at most, see {@link ConflationPolicy}
+     */
+    public ListenerSubscription subscribe(@NotNull ITallyClientListener listener,
+                                          @NotNull Executor executor,
+                                          int capacity,
+                                          @NotNull ConflationPolicy policy) {
+        ListenerSubscription subscription = new ListenerSubscription(this, listener, executor, capacity, policy);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    void unsubscribe(ListenerSubscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    private void publish(ListenerSubscription.Event event) {
+        for (ListenerSubscription subscription : subscriptions) {
+            subscription.post(event);
+        }
+    }
+
+    /**
+     * Synchronous listener called on the protocol thread, must return fast,
+     * see {@link #subscribe(ITallyClientListener)} for anything slower.
+     */
+    public void addTallyListener(@NotNull ITallyListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener must be not null");
+        }
+
+        tallyListeners.add(listener);
+    }
+
+    public void removeTallyListener(ITallyListener listener) {
+        tallyListeners.remove(listener);
+    }
+
+    /**
+     * Marks the state as changed, it is published at the end of the packet being applied
+     * or right away outside of packets.
+     */
+    protected void up() {
+        isDirty = true;
+        if (!isApplying) {
+            publish();
+        }
+    }
+
+    private void publish() {
+        isDirty = false;
+        snapshot = createSnapshot(snapshot.version + 1);
+        history.set((int) snapshot.version & (HISTORY_SIZE - 1), snapshot);
+        if (log.isDebugEnabled()) {
+            log.debug(snapshot.toString());
+        }
+    }
+
+    private TallySnapshot createSnapshot(long version) {
+        if (isInputsDirty) {
+            publishedInputs = inputs.build();
+            isInputsDirty = false;
         }
 
-        return String.format(
-                "TallyClient" +
-                        "\n\tuuid = %d" +
-                        "\n\thost = %s" +
-                        "\n\tstate = %s" +
-                        "\n\tfirmware = %s" +
-                        "\n\tproduct = %s" +
-                        "\n\t" +
-                        "\n\tsources = %d" +
-                        "\n\tpgm = %d" +
-                        "\n\tprv = %d" +
-                        "\n\t" +
-                        "%s\n\n%s",
-                uuid,
+        return new TallySnapshot(
+                version,
                 getAtemHost(),
                 getState(),
                 firmwareVersion,
@@ -131,14 +254,22 @@ public class TallyClient extends AtemClient {
                 sources,
                 programIndex,
                 previewIndex,
-                info,
-                toJson().toString(2)
+                table,
+                publishedInputs
         );
     }
 
-    protected void up() {
-        uuid = uuid + 1;
-        log.info(toString());
+    @Override
+    protected void onPacket(Packet packet) throws IOException {
+        isApplying = true;
+        try {
+            super.onPacket(packet);
+        } finally {
+            isApplying = false;
+            if (isDirty) {
+                publish();
+            }
+        }
     }
 
     protected void setTally(@NotNull CmdTallyBySource tally) {
@@ -149,7 +280,30 @@ public class TallyClient extends AtemClient {
             return;
         }
 
+        TallyTable previous = table;
+        TallyTable next = TallyTable.create(previous.index, tally);
+        TallyDelta delta = TallyDelta.between(previous, next);
         this.tally = tally;
+        this.table = next;
+
+        if (delta.isEmpty()) {
+            if (next.index != previous.index) {
+                up();   // new sources, all off
+            }
+            return;
+        }
+
+        if (!subscriptions.isEmpty()) {
+            publish(new ListenerSubscription.TallyEvent(previous, next));
+        }
+
+        for (ITallyListener listener : tallyListeners) {
+            try {
+                listener.onTallyChanged(delta, next);
+            } catch (RuntimeException ex) {
+                log.error("tally listener is failed", ex);
+            }
+        }
         up();
     }
 
@@ -159,6 +313,13 @@ public class TallyClient extends AtemClient {
         }
 
         this.previewIndex = previewIndex;
+        if (!subscriptions.isEmpty()) {
+            publish(new ListenerSubscription.Event(
+                    ListenerSubscription.KIND_PREVIEW,
+                    0,
+                    (client, listener) -> listener.onPreviewChanged(client, previewIndex)
+            ));
+        }
         up();
     }
 
@@ -168,23 +329,52 @@ public class TallyClient extends AtemClient {
         }
 
         this.programIndex = programIndex;
+        if (!subscriptions.isEmpty()) {
+            publish(new ListenerSubscription.Event(
+                    ListenerSubscription.KIND_PROGRAM,
+                    0,
+                    (client, listener) -> listener.onProgramChanged(client, programIndex)
+            ));
+        }
+        up();
+    }
+
+    /**
+     * Names an input, protocol thread only.
+     */
+    public void setNames(int index, String shortName, String longName) {
+        if (!inputs.setNames(index, shortName, longName)) {
+            return;
+        }
+
+        onRenamed(index, shortName, longName);
         up();
     }
 
-    public void setNames(Integer index, String shortName, String longName) {
-        if (shortNames.containsKey(index)
-                && shortNames.get(index) == shortName
-                && longNames.containsKey(index)
-                && longNames.get(index) == longName
-                ) {
+    protected void setInputProperties(@NotNull CmdInputProperties props) {
+        int changes = inputs.put(props);
+        if (changes == 0) {
             return;
         }
 
-        shortNames.put(index, shortName);
-        longNames.put(index, longName);
+        isInputsDirty = true;
+        if ((changes & InputTable.CHANGED_NAMES) != 0) {
+            onRenamed(props.videoSource, props.shortName, props.longName);
+        }
         up();
     }
 
+    private void onRenamed(int index, String shortName, String longName) {
+        isInputsDirty = true;
+        if (!subscriptions.isEmpty()) {
+            publish(new ListenerSubscription.Event(
+                    ListenerSubscription.KIND_RENAME,
+                    index,
+                    (client, listener) -> listener.onInputRenamed(client, index, shortName, longName)
+            ));
+        }
+    }
+
     public void setProductName(String productName) {
         if (this.productName == productName) {
             return;
@@ -213,15 +403,53 @@ public class TallyClient extends AtemClient {
     }
 
     @Override
-    protected void setState(String newState) {
+    protected void setState(State newState) {
         super.setState(newState);
+        if (!subscriptions.isEmpty()) {
+            publish(new ListenerSubscription.Event(
+                    ListenerSubscription.KIND_STATE,
+                    0,
+                    (client, listener) -> listener.onStateChanged(client, newState)
+            ));
+        }
         up();
     }
 
+    @Override
+    protected CommandInterest getCommandInterest() {
+        return isTallyOnly ? TALLY_INTEREST : super.getCommandInterest();
+    }
+
+    @Override
+    protected boolean isUsingCommandViews() {
+        return isTallyOnly || super.isUsingCommandViews();
+    }
+
+    /**
+     * Applies the commands of {@link #TALLY_INTEREST}. Overrides see only the commands of
+     * {@link #getCommandInterest()}, which are all commands unless the override narrows them,
+     * as command objects unless {@link #isUsingCommandViews()} is overridden to pass reusable views.
+     */
     @Override
     protected void applyCommand(Command cmd) {
         if (false) {
 
+        } else if (cmd instanceof TallyBySourceView) {
+
+            // copy only on a change, the view is gone after the call
+            TallyBySourceView view = (TallyBySourceView) cmd;
+            if (!view.matches(tally)) {
+                setTally(view.copy());
+            }
+
+        } else if (cmd instanceof ProgramInputView) {
+
+            setProgramIndex(((ProgramInputView) cmd).videoSource());
+
+        } else if (cmd instanceof PreviewInputView) {
+
+            setPreviewIndex(((PreviewInputView) cmd).videoSource());
+
         } else if (cmd instanceof CmdTallyBySource) {
 
             setTally((CmdTallyBySource) cmd);
@@ -236,8 +464,7 @@ public class TallyClient extends AtemClient {
 
         } else if (cmd instanceof CmdInputProperties) {
 
-            CmdInputProperties props = (CmdInputProperties) cmd;
-            setNames(props.videoSource, props.shortName, props.longName);
+            setInputProperties((CmdInputProperties) cmd);
 
         } else if (cmd instanceof CmdTopology) {
 
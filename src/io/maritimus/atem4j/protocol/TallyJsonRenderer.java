@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import io.maritimus.atem4j.protocol.tally.SourceIndex;
+import io.maritimus.atem4j.protocol.tally.TallyTable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streams {@link TallySnapshot}s as UTF-8 json, the same document as {@link TallySnapshot#toJson()}:
+ * strings are escaped like {@link org.json.JSONObject#quote(String)} and null fields are left out,
+ * only the keys come in a fixed order.
+ *
+ * Renders into a reusable buffer, the fragment of each source is kept and re-rendered only when
+ * its status or names change, so a new version mostly costs copying bytes.
+ */
+final class TallyJsonRenderer {
+
+    private static final byte[] RUS = "Проверка".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buf = new byte[4096];
+    private int size = 0;
+
+    // fragments of the last rendering by dense index
+    private SourceIndex index = null;
+    private byte[][] fragments = new byte[0][];
+    private int[] statuses = new int[0];
+    private String[] shortNames = new String[0];
+    private String[] longNames = new String[0];
+    private long rendered = 0;
+
+    synchronized byte[] render(TallySnapshot snapshot) {
+        size = 0;
+        writeAscii("{\"uuid\":");
+        writeLong(snapshot.version);
+        writeAscii(",\"rus\":\"");
+        write(RUS, 0, RUS.length);
+        writeAscii("\"");
+        writeField(",\"host\":", snapshot.host);
+        writeField(",\"state\":", snapshot.state == null ? null : snapshot.state.name());
+        writeField(",\"firmware\":", snapshot.firmwareVersion);
+        writeField(",\"product\":", snapshot.productName);
+        writeAscii(",\"sources\":");
+        writeLong(snapshot.sources);
+        writeAscii(",\"pgm\":");
+        writeLong(snapshot.programIndex);
+        writeAscii(",\"prv\":");
+        writeLong(snapshot.previewIndex);
+        writeAscii(",\"tally\":[");
+
+        TallyTable table = snapshot.table;
+        if (table.index != index) {
+            index = table.index;
+            fragments = new byte[table.size()][];
+            statuses = new int[table.size()];
+            shortNames = new String[table.size()];
+            longNames = new String[table.size()];
+        }
+
+        for (int j = 0; j < table.size(); j++) {
+            if (j > 0) {
+                writeAscii(",");
+            }
+            byte[] fragment = fragment(snapshot, j);
+            write(fragment, 0, fragment.length);
+        }
+
+        writeAscii("]}");
+        return Arrays.copyOf(buf, size);
+    }
+
+    /**
+     * @return amount of source fragments rendered so far
+     */
+    synchronized long getRendered() {
+        return rendered;
+    }
+
+    private byte[] fragment(TallySnapshot snapshot, int j) {
+        int source = snapshot.table.index.sourceAt(j);
+        int status = (snapshot.table.isOnProgramAt(j) ? 1 : 0) | (snapshot.table.isOnPreviewAt(j) ? 2 : 0);
+        String shortName = snapshot.getShortName(source);
+        String longName = snapshot.getLongName(source);
+
+        if (fragments[j] != null
+                && statuses[j] == status
+                && shortName.equals(shortNames[j])
+                && longName.equals(longNames[j])) {
+            return fragments[j];
+        }
+
+        // render at the tail of the buffer, then move it out
+        int start = size;
+        writeAscii("{\"index\":");
+        writeLong(source);
+        writeAscii(",\"name\":");
+        writeString(shortName);
+        writeAscii(",\"long\":");
+        writeString(longName);
+        writeAscii((status & 1) != 0 ? ",\"pgm\":true" : ",\"pgm\":false");
+        writeAscii((status & 2) != 0 ? ",\"prv\":true}" : ",\"prv\":false}");
+        byte[] fragment = Arrays.copyOfRange(buf, start, size);
+        size = start;
+
+        fragments[j] = fragment;
+        statuses[j] = status;
+        shortNames[j] = shortName;
+        longNames[j] = longName;
+        rendered++;
+        return fragment;
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+        }
+    }
+
+    private void write(byte[] bytes, int offset, int length) {
+        ensure(length);
+        System.arraycopy(bytes, offset, buf, size, length);
+        size += length;
+    }
+
+    private void writeAscii(String ascii) {
+        ensure(ascii.length());
+        for (int j = 0; j < ascii.length(); j++) {
+            buf[size++] = (byte) ascii.charAt(j);
+        }
+    }
+
+    private void writeLong(long value) {
+        writeAscii(Long.toString(value));
+    }
+
+    /**
+     * Writes the field, unless the value is null, as org.json drops null values.
+     */
+    private void writeField(String prefix, String value) {
+        if (value == null) {
+            return;
+        }
+
+        writeAscii(prefix);
+        writeString(value);
+    }
+
+    private void writeString(String value) {
+        ensure(value.length() * 6 + 2);
+        buf[size++] = '"';
+        char previous = 0;
+        for (int j = 0; j < value.length(); j++) {
+            char c = value.charAt(j);
+            if (c == '"' || c == '\\' || (c == '/' && previous == '<')) {
+                buf[size++] = '\\';
+                buf[size++] = (byte) c;
+            } else if (c < 0x20 || (c >= 0x80 && c < 0xA0) || (c >= 0x2000 && c < 0x2100)) {
+                writeEscaped(c);
+            } else if (c < 0x80) {
+                buf[size++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[size++] = (byte) (0xC0 | (c >> 6));
+                buf[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && j + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(j + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++j));
+                buf[size++] = (byte) (0xF0 | (cp >> 18));
+                buf[size++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[size++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[size++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                buf[size++] = (byte) (0xE0 | (c >> 12));
+                buf[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+            previous = c;
+        }
+        buf[size++] = '"';
+    }
+
+    private void writeEscaped(char c) {
+        buf[size++] = '\\';
+        switch (c) {
+            case '\b':
+                buf[size++] = 'b';
+                break;
+            case '\t':
+                buf[size++] = 't';
+                break;
+            case '\n':
+                buf[size++] = 'n';
+                break;
+            case '\f':
+                buf[size++] = 'f';
+                break;
+            case '\r':
+                buf[size++] = 'r';
+                break;
+            default:
+                buf[size++] = 'u';
+                buf[size++] = HEX[(c >> 12) & 0xF];
+                buf[size++] = HEX[(c >> 8) & 0xF];
+                buf[size++] = HEX[(c >> 4) & 0xF];
+                buf[size++] = HEX[c & 0xF];
+        }
+    }
+}
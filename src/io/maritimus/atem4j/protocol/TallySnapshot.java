@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import io.maritimus.atem4j.protocol.tally.InputTable;
+import io.maritimus.atem4j.protocol.tally.TallyTable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Immutable, versioned state of a {@link TallyClient}.
+ *
+ * Published by the protocol thread through one volatile reference, so any thread reads a
+ * consistent combination of values by a single load, see {@link TallyClient#getSnapshot()}.
+ */
+public final class TallySnapshot {
+
+    /** incremented by every published change */
+    public final long version;
+
+    public final String host;
+    public final AtemClient.State state;
+    public final String firmwareVersion;
+    public final String productName;
+    public final int sources;
+    public final int programIndex;
+    public final int previewIndex;
+    public final TallyTable table;
+    public final InputTable inputs;
+
+    volatile byte[] json = null;    // rendered once, see TallyClient#toJsonBytes
+
+    TallySnapshot(long version,
+                  String host,
+                  AtemClient.State state,
+                  String firmwareVersion,
+                  String productName,
+                  int sources,
+                  int programIndex,
+                  int previewIndex,
+                  TallyTable table,
+                  InputTable inputs) {
+        this.version = version;
+        this.host = host;
+        this.state = state;
+        this.firmwareVersion = firmwareVersion;
+        this.productName = productName;
+        this.sources = sources;
+        this.programIndex = programIndex;
+        this.previewIndex = previewIndex;
+        this.table = table;
+        this.inputs = inputs;
+    }
+
+    public String getShortName(int index) {
+        return inputs.getShortName(index);
+    }
+
+    public String getLongName(int index) {
+        return inputs.getLongName(index);
+    }
+
+    public JSONObject toJson() {
+        JSONObject retJson = new JSONObject();
+
+        JSONArray info = new JSONArray();
+
+        for (int j = 0; j < table.size(); j++) {
+            int index = table.index.sourceAt(j);
+            JSONObject input = new JSONObject();
+            input.put("index", index).
+                    put("name", getShortName(index)).
+                    put("long", getLongName(index)).
+                    put("pgm", table.isOnProgramAt(j)).
+                    put("prv", table.isOnPreviewAt(j));
+            info.put(input);
+        }
+
+        retJson.
+                put("uuid", version).
+                put("rus", "Проверка").
+                put("host", host).
+                put("state", state == null ? null : state.name()).
+                put("firmware", firmwareVersion).
+                put("product", productName).
+                put("sources", sources).
+                put("pgm", programIndex).
+                put("prv", previewIndex).
+                put("tally", info);
+
+        return retJson;
+    }
+
+    @Override
+    public String toString() {
+        StringBuffer info = new StringBuffer();
+
+        for (int j = 0; j < table.size(); j++) {
+            int index = table.index.sourceAt(j);
+            info.append(String.format(
+                    "\n\t\t%5d\t%5s\t%s%s\t(%s)",
+                    index,
+                    getShortName(index),
+                    table.isOnProgramAt(j) ? " PGM" : "    ",
+                    table.isOnPreviewAt(j) ? " PRV" : "    ",
+                    getLongName(index)
+            ));
+        }
+
+        return String.format(
+                "TallyClient" +
+                        "\n\tuuid = %d" +
+                        "\n\thost = %s" +
+                        "\n\tstate = %s" +
+                        "\n\tfirmware = %s" +
+                        "\n\tproduct = %s" +
+                        "\n\t" +
+                        "\n\tsources = %d" +
+                        "\n\tpgm = %d" +
+                        "\n\tprv = %d" +
+                        "\n\t" +
+                        "%s\n\n%s",
+                version,
+                host,
+                state,
+                firmwareVersion,
+                productName,
+                sources,
+                programIndex,
+                previewIndex,
+                info,
+                toJson().toString(2)
+        );
+    }
+}
@@ -35,6 +35,14 @@ public class Utils {
         return rand.nextInt((max - min) + 1) + min;
     }
 
+    /**
+     * Spreads int keys, like sequential source ids, over the slots of open addressing tables.
+     */
+    public static int mixHash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
     public static String readString(@NotNull ByteBuffer buf, int maxLength) throws ParseException {
         if (buf == null) {
             throw new IllegalArgumentException("buf must be not null");
@@ -81,6 +89,20 @@ public class Utils {
         return command;
     }
 
+    /**
+     * @return raw command id of the 4 char command name, the reverse of {@link #stringifyCommand(int)}
+     */
+    public static int parseCommand(@NotNull String command) {
+        if (command == null || command.length() != 4) {
+            throw new IllegalArgumentException(String.format("command = %s must be 4 chars", command));
+        }
+
+        return ((command.charAt(0) & 0xFF) << 24)
+                | ((command.charAt(1) & 0xFF) << 16)
+                | ((command.charAt(2) & 0xFF) << 8)
+                | (command.charAt(3) & 0xFF);
+    }
+
     public static ByteBuffer parseHexString(String str) {
         return ByteBuffer.wrap(DatatypeConverter.parseHexBinary(str.replace(" ", "")));
     }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.command;
+
+import io.maritimus.atem4j.protocol.ParseException;
+
+/**
+ * Flyweight of AMTl, see {@link CmdAudioMixerTally}.
+ */
+public final class AudioMixerTallyView extends CommandView {
+
+    public int count() {
+        return buf.getChar(offset);
+    }
+
+    public int sourceAt(int index) {
+        return buf.getChar(offset + 2 + index * 3);
+    }
+
+    public int statusAt(int index) {
+        return buf.get(offset + 4 + index * 3) & 0xFF;
+    }
+
+    public boolean isMixedIn(int audioSource) {
+        int count = count();
+        for (int j = 0; j < count; j++) {
+            if (sourceAt(j) == audioSource) {
+                return (statusAt(j) & CmdAudioMixerTally.STATUS_MIXED_IN) != 0;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void validate() throws ParseException {
+        checkPayloadSize(2);
+        checkPayloadSize(2 + count() * 3);
+    }
+
+    @Override
+    public CmdAudioMixerTally copy() {
+        return CmdAudioMixerTally.read(body(), payloadSize);
+    }
+}
@@ -16,6 +16,8 @@
 
 package io.maritimus.atem4j.protocol.command;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by Oleg Akimov on 26/07/15.
  */
@@ -30,6 +32,12 @@ public class CmdFirmwareVersion extends Command {
         this.version = String.format("%d.%d", major, minor);
     }
 
+    public static CmdFirmwareVersion read(ByteBuffer body, int payloadSize) {
+        int major = body.getChar();
+        int minor = body.getChar();
+        return new CmdFirmwareVersion(major, minor);
+    }
+
     @Override
     public String toString() {
         return String.format("%s version=%s", getClass().getSimpleName(), version);
@@ -18,6 +18,8 @@ package io.maritimus.atem4j.protocol.command;
 
 import io.maritimus.atem4j.protocol.command.Command;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by Oleg Akimov on 28/07/15.
  */
@@ -28,6 +30,10 @@ public class CmdInitializationComplete extends Command {
         this.uc1 = uc1;
     }
 
+    public static CmdInitializationComplete read(ByteBuffer body, int payloadSize) {
+        return new CmdInitializationComplete(body.getInt());
+    }
+
     @Override
     public String toString() {
         return String.format("%s uc1 = 0x%h", getClass().getSimpleName(), uc1);
@@ -18,6 +18,8 @@ package io.maritimus.atem4j.protocol.command;
 
 import io.maritimus.atem4j.protocol.command.Command;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by Oleg Akimov on 25/07/15.
  */
@@ -34,6 +36,15 @@ public class CmdPreviewInput extends Command {
         this.uc2 = uc2;
     }
 
+    public static CmdPreviewInput read(ByteBuffer body, int payloadSize) {
+        return new CmdPreviewInput(
+                body.get() & 0xFF,
+                body.get() & 0xFF,
+                body.getChar(),
+                body.getInt()
+        );
+    }
+
     @Override
     public String toString() {
         return String.format("%s me=%d videoSource=%d", getClass().getSimpleName(), me, videoSource);
@@ -18,6 +18,10 @@ package io.maritimus.atem4j.protocol.command;
 
 import com.sun.istack.internal.NotNull;
 import io.maritimus.atem4j.protocol.command.Command;
+import io.maritimus.atem4j.protocol.ParseException;
+import io.maritimus.atem4j.protocol.Utils;
+
+import java.nio.ByteBuffer;
 
 /**
  * Created by Oleg Akimov on 26/07/15.
@@ -29,6 +33,10 @@ public class CmdProductId extends Command {
         this.name = name;
     }
 
+    public static CmdProductId read(ByteBuffer body, int payloadSize) throws ParseException {
+        return new CmdProductId(Utils.readString(body, payloadSize));
+    }
+
     @Override
     public String toString() {
         return String.format("%s name=%s", getClass().getSimpleName(), name);
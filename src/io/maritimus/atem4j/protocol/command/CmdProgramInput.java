@@ -18,6 +18,8 @@ package io.maritimus.atem4j.protocol.command;
 
 import io.maritimus.atem4j.protocol.command.Command;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by Oleg Akimov on 26/07/15.
  */
@@ -33,6 +35,14 @@ public class CmdProgramInput extends Command {
         this.videoSource = videoSource;
     }
 
+    public static CmdProgramInput read(ByteBuffer body, int payloadSize) {
+        return new CmdProgramInput(
+                body.get() & 0xFF,
+                body.get() & 0xFF,
+                body.getChar()
+        );
+    }
+
     @Override
     public String toString() {
         return String.format(
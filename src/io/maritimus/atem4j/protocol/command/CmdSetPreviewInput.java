@@ -16,12 +16,18 @@
 
 package io.maritimus.atem4j.protocol.command;
 
-import io.maritimus.atem4j.protocol.command.Command;
+import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.Utils;
+
+import java.nio.ByteBuffer;
 
 /**
  * Created by Oleg Akimov on 25/07/15.
  */
 public class CmdSetPreviewInput extends Command {
+    public static final int RAW_COMMAND = Utils.parseCommand("CPvI");
+    public static final int BLOCK_SIZE = 12;
+
     public final int me;
     public final int videoSource;
 
@@ -30,6 +36,30 @@ public class CmdSetPreviewInput extends Command {
         this.videoSource = videoSource;
     }
 
+    /**
+     * Not registered by default, see {@link CommandRegistry}.
+     */
+    public static CmdSetPreviewInput read(ByteBuffer body, int payloadSize) {
+        int me = body.get() & 0xFF;
+        int uc1 = body.get() & 0xFF;
+        int videoSource = body.getChar();
+        return new CmdSetPreviewInput(me, videoSource);
+    }
+
+    @Override
+    public void write(@NotNull ByteBuffer buf) {
+        if (buf == null) {
+            throw new IllegalArgumentException("buf must be not null");
+        }
+
+        buf.putChar((char) BLOCK_SIZE);
+        buf.putChar((char) 0);
+        buf.putInt(RAW_COMMAND);
+        buf.put((byte) me);
+        buf.put((byte) 0);
+        buf.putChar((char) videoSource);
+    }
+
     @Override
     public String toString() {
         return String.format("%s me=%d videoSource=%d", getClass().getSimpleName(), me, videoSource);
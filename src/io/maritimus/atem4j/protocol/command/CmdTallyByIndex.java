@@ -19,6 +19,8 @@ package io.maritimus.atem4j.protocol.command;
 import com.sun.istack.internal.NotNull;
 import io.maritimus.atem4j.protocol.command.Command;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by Oleg Akimov on 25/07/15.
  */
@@ -55,6 +57,13 @@ public class CmdTallyByIndex extends Command {
         return (flags[index] & FLAG_PREVIEW) != 0;
     }
 
+    public static CmdTallyByIndex read(ByteBuffer body, int payloadSize) {
+        int length = body.getChar();    // 0 - 20, remaining must = (length * 1 byte)
+        byte[] flags = new byte[length];
+        body.get(flags);
+        return new CmdTallyByIndex(flags);
+    }
+
     @Override
     public String toString() {
         String info = getClass().getSimpleName();
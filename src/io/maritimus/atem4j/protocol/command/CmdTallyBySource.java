@@ -70,10 +70,13 @@ public class CmdTallyBySource extends Command {
         return false;
     }
 
+    /**
+     * Equal tallies have the same statuses by source id, the order of sources doesn't matter.
+     */
     @Override
     public boolean equals (Object object) {
-        if (object == null) {
-            return false;
+        if (this == object) {
+            return true;
         }
 
         if (!(object instanceof CmdTallyBySource)) {
@@ -86,19 +89,27 @@ public class CmdTallyBySource extends Command {
             return false;
         }
 
-        int[] sources = getVideoSources();
-
-        for (int j = 0; j < sources.length; j++) {
-            if (!that.hasVideoSource(sources[j])) {
+        for (int j = 0; j < statuses.length; j++) {
+            int videoSource = statuses[j][0];
+            if (!that.hasVideoSource(videoSource)) {
                 return false;
             }
 
-            if (getStatus(j) != that.getStatus(j)) {
+            if (statuses[j][1] != that.getStatus(videoSource)) {
                 return false;
             }
         }
 
-        return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = length;
+        for (int j = 0; j < statuses.length; j++) {
+            hash += statuses[j][0] * 31 + statuses[j][1];
+        }
+        return hash;
     }
 
     @Override
@@ -18,6 +18,8 @@ package io.maritimus.atem4j.protocol.command;
 
 import io.maritimus.atem4j.protocol.command.Command;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by Oleg Akimov on 26/07/15.
  */
@@ -32,6 +34,13 @@ public class CmdTallyChannelConfig extends Command {
         this.uc2 = uc2;
     }
 
+    public static CmdTallyChannelConfig read(ByteBuffer body, int payloadSize) {
+        int uc1 = body.getInt();
+        int tallyChannels = body.get() & 0xFF;
+        int uc2 = ((body.get() & 0xFF) << 16) | body.getChar();
+        return new CmdTallyChannelConfig(uc1, tallyChannels, uc2);
+    }
+
     @Override
     public String toString() {
         return String.format(
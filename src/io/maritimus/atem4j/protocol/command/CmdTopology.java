@@ -18,6 +18,8 @@ package io.maritimus.atem4j.protocol.command;
 
 import io.maritimus.atem4j.protocol.command.Command;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by Oleg Akimov on 26/07/15.
  */
@@ -63,6 +65,23 @@ public class CmdTopology extends Command {
         this.uc3 = uc3;
     }
 
+    public static CmdTopology read(ByteBuffer body, int payloadSize) {
+        return new CmdTopology(
+                body.get() & 0xFF,  // int mes,
+                body.get() & 0xFF,  // int sources,
+                body.get() & 0xFF,  // int colorGenerators,
+                body.get() & 0xFF,  // int auxBusses,
+                body.get() & 0xFF,  // int downstreamKeyes,
+                body.get() & 0xFF,  // int stingers,
+                body.get() & 0xFF,  // int dves,
+                body.get() & 0xFF,  // int superSources,
+                body.get() & 0xFF,  // int uc1,
+                (body.get() & 0b1) != 0,  // boolean hasSdOutput,
+                body.get() & 0xFF,  // int uc2,
+                body.get() & 0xFF   // int uc3
+        );
+    }
+
     @Override
     public String toString() {
         return String.format(
@@ -16,21 +16,18 @@
 package io.maritimus.atem4j.protocol.command;
 
 import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.Utils;
 import io.maritimus.atem4j.protocol.command.Command;
 
 /**
  * Created by Oleg Akimov on 25/07/15.
  */
 public class CmdUnknown extends Command {
-    public final String command;
+    public final int rawCommand;
     public final int blockSize;  // block blockSize (payload + 2 bytes for blockSize + N bytes for dividers)
     public final String payloadHex;
 
-    public CmdUnknown(@NotNull String command, int blockSize, @NotNull String payloadHex) {
-        if (command == null) {
-            throw new IllegalArgumentException("command must be not null");
-        }
-
+    public CmdUnknown(int rawCommand, int blockSize, @NotNull String payloadHex) {
         if (blockSize <= 0) {
             throw new IllegalArgumentException(String.format("blockSize must be positive, the given blockSize is %d", blockSize));
         }
@@ -39,13 +36,24 @@ public class CmdUnknown extends Command {
             throw new IllegalArgumentException("payloadHex must be not null");
         }
 
-        this.command = command;
+        this.rawCommand = rawCommand;
         this.blockSize = blockSize;
         this.payloadHex = payloadHex;
     }
 
+    public CmdUnknown(@NotNull String command, int blockSize, @NotNull String payloadHex) {
+        this(Utils.parseCommand(command), blockSize, payloadHex);
+    }
+
+    /**
+     * @return 4 char command name, built on every call
+     */
+    public String getCommand() {
+        return Utils.stringifyCommand(rawCommand);
+    }
+
     @Override
     public String toString() {
-        return String.format("%s command=%s size=%d payload=%s", getClass().getSimpleName(), command, blockSize, payloadHex);
+        return String.format("%s command=%s size=%d payload=%s", getClass().getSimpleName(), getCommand(), blockSize, payloadHex);
     }
 }
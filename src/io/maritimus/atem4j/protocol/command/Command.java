@@ -31,10 +31,35 @@ public abstract class Command {
     private static final Logger log = LoggerFactory.getLogger(Command.class);
 
     public static Command read(@NotNull ByteBuffer buf) throws ParseException {
+        return read(buf, CommandRegistry.getDefault());
+    }
+
+    /**
+     * Reads the next command block by the decoder registered for its command id,
+     * commands without decoder are read as {@link CmdUnknown}.
+     */
+    public static Command read(@NotNull ByteBuffer buf, @NotNull CommandRegistry registry) throws ParseException {
+        return read(buf, registry, null, null, null);
+    }
+
+    /**
+     * Reads the next command block, see {@link CommandReader}.
+     *
+     * @return command or null if the block is skipped, because the command is not of interest
+     */
+    static Command read(ByteBuffer buf,
+                        CommandRegistry registry,
+                        CommandInterest interest,
+                        ICommandCapture capture,
+                        CommandViews views) throws ParseException {
         if (buf == null) {
             throw new IllegalArgumentException("buf must be not null");
         }
 
+        if (registry == null) {
+            throw new IllegalArgumentException("registry must be not null");
+        }
+
         if (buf.remaining() < 2) {
             throw new ParseException(
                     "buf remaining = %d is to short for next payload",
@@ -69,101 +94,37 @@ public abstract class Command {
 
         int divStart = buf.getChar();
         int rawCommand = buf.getInt();
-        String command = Utils.stringifyCommand(rawCommand);
+
+        if (capture != null) {
+            ByteBuffer block = buf.duplicate();
+            block.reset();
+            block.limit(finalPosition);
+            capture.onBlock(rawCommand, block.slice().asReadOnlyBuffer());
+        }
+
+        if (interest != null && !interest.contains(rawCommand)) {
+            buf.position(finalPosition);
+            return null;
+        }
+
+        if (views != null) {
+            CommandView view = views.acquire(rawCommand);
+            if (view != null) {
+                view.wrap(buf, buf.position(), payloadSize);
+                buf.position(finalPosition);
+                return view;
+            }
+        }
+
+        ICommandDecoder decoder = registry.get(rawCommand);
         Command cmd;
-        byte[] block;
-
-        switch (command) {
-            /*
-            case "CPvI":
-                // 4 bytes
-                int me = body.get() & 0xFF;
-                int uc1 = body.get() & 0xFF;
-                int videoSource = body.getChar();
-                cmd = new CmdSetPreviewInput(me, videoSource);
-                break;
-            */
-
-            case "_ver":
-                int major = buf.getChar();
-                int minor = buf.getChar();
-                cmd = new CmdFirmwareVersion(major, minor);
-                break;
-
-            case "_pin":
-                String name = Utils.readString(buf, payloadSize);
-                cmd = new CmdProductId(name);
-                break;
-
-            case "_top":
-                cmd = new CmdTopology(
-                  buf.get() & 0xFF,  // int mes,
-                  buf.get() & 0xFF,  // int sources,
-                  buf.get() & 0xFF,  // int colorGenerators,
-                  buf.get() & 0xFF,  // int auxBusses,
-                  buf.get() & 0xFF,  // int downstreamKeyes,
-                  buf.get() & 0xFF,  // int stingers,
-                  buf.get() & 0xFF,  // int dves,
-                  buf.get() & 0xFF,  // int superSources,
-                  buf.get() & 0xFF,  // int uc1,
-                  (buf.get() & 0b1) != 0,  // boolean hasSdOutput,
-                  buf.get() & 0xFF,  // int uc2,
-                  buf.get() & 0xFF   // int uc3
-                );
-                break;
 
-            case "PrgI":
-                cmd = new CmdProgramInput(
-                        buf.get() & 0xFF,
-                        buf.get() & 0xFF,
-                        buf.getChar()
-                );
-                break;
-
-            case "PrvI":
-                cmd = new CmdPreviewInput(
-                        buf.get() & 0xFF,
-                        buf.get() & 0xFF,
-                        buf.getChar(),
-                        buf.getInt()
-                );
-                break;
-
-            case "TlIn":
-                int length = buf.getChar();    // 0 - 20, remaining must = (length * 1 byte)
-                byte[] flags = new byte[length];
-                buf.get(flags);
-                cmd = new CmdTallyByIndex(flags);
-                break;
-
-            case "_TlC":
-                int uc1 = buf.getInt();
-                int tallyChannels = buf.get() & 0xFF;
-                int uc2 = ((buf.get() & 0xFF) << 16) | buf.getChar();
-                cmd = new CmdTallyChannelConfig(uc1, tallyChannels, uc2);
-                break;
-
-            case "InPr":
-                cmd = CmdInputProperties.read(buf);
-                break;
-
-            case "AMTl":
-                cmd = CmdAudioMixerTally.read(buf, payloadSize);
-                break;
-
-            case "TlSr":
-                cmd = CmdTallyBySource.read(buf);
-                break;
-
-            case "InCm":
-                cmd = new CmdInitializationComplete(buf.getInt());
-                break;
-
-            default:
-                buf.reset();
-                String payloadHex = Utils.readHexString(buf, blockSize);
-                cmd = new CmdUnknown(command, blockSize, payloadHex);
-                break;
+        if (decoder != null) {
+            cmd = decoder.decode(buf, payloadSize);
+        } else {
+            buf.reset();
+            String payloadHex = Utils.readHexString(buf, blockSize);
+            cmd = new CmdUnknown(rawCommand, blockSize, payloadHex);
         }
 
         // re-checking right buffer position
@@ -175,18 +136,30 @@ public abstract class Command {
             if (isOverRead) {
                 throw new ParseException(
                         "Command %s reader overread block %s",
-                        command,
+                        Utils.stringifyCommand(rawCommand),
                         payloadHex
                 );
             }
 
-            log.warn(String.format("block for command = %s is not read fully, payload = %s", command, payloadHex));
+            log.warn(String.format(
+                    "block for command = %s is not read fully, payload = %s",
+                    Utils.stringifyCommand(rawCommand),
+                    payloadHex
+            ));
         }
 
         return cmd;
     }
 
+    /**
+     * Writes the command block for sending, see {@link io.maritimus.atem4j.protocol.AtemClient#sendCommand(Command...)}.
+     *
+     * @throws UnsupportedOperationException if the command can't be sent
+     */
     public void write(@NotNull ByteBuffer buf) {
-        throw new RuntimeException("write is under construction");
+        throw new UnsupportedOperationException(String.format(
+                "write of %s is under construction",
+                getClass().getSimpleName()
+        ));
     }
 }
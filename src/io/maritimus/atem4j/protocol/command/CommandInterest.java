@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.command;
+
+import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.IntObjectMap;
+import io.maritimus.atem4j.protocol.Utils;
+
+/**
+ * Immutable set of command ids an application consumes. Blocks of other commands are skipped
+ * by {@link CommandReader} without decoding.
+ */
+public final class CommandInterest {
+
+    private final IntObjectMap<Boolean> ids;
+
+    public static CommandInterest of(@NotNull String... commands) {
+        return new CommandInterest(new IntObjectMap<>(commands.length)).with(commands);
+    }
+
+    private CommandInterest(IntObjectMap<Boolean> ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * @return new interest with the given commands added
+     */
+    public CommandInterest with(@NotNull String... commands) {
+        if (commands == null) {
+            throw new IllegalArgumentException("commands must be not null");
+        }
+
+        IntObjectMap<Boolean> copy = new IntObjectMap<>(ids);
+        for (String command : commands) {
+            copy.put(Utils.parseCommand(command), Boolean.TRUE);
+        }
+        return new CommandInterest(copy);
+    }
+
+    public boolean contains(int rawCommand) {
+        return ids.containsKey(rawCommand);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(getClass().getSimpleName()).append(" [");
+        int[] keys = ids.keys();
+        for (int j = 0; j < keys.length; j++) {
+            sb.append(j == 0 ? "" : ", ").append(Utils.stringifyCommand(keys[j]));
+        }
+        return sb.append("]").toString();
+    }
+}
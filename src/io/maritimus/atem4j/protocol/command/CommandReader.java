@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.command;
+
+import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.ParseException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads command blocks by a registry, optionally only those of interest. Blocks of other commands
+ * are skipped by their size, nothing is allocated or hex encoded for them.
+ *
+ * A reader with {@link CommandViews} reads hot commands as reusable views instead, such a reader
+ * belongs to a single consumer thread and its views are valid until the next {@link #reset()}.
+ */
+public final class CommandReader {
+
+    /** decodes everything by the default registry */
+    public static final CommandReader DEFAULT = new CommandReader(CommandRegistry.getDefault(), null, null);
+
+    public final CommandRegistry registry;
+    public final CommandInterest interest;
+    public final ICommandCapture capture;
+    public final CommandViews views;
+
+    /**
+     * @param interest commands to decode, null for all
+     * @param capture debugging hook, may be null
+     */
+    public CommandReader(@NotNull CommandRegistry registry, CommandInterest interest, ICommandCapture capture) {
+        this(registry, interest, capture, null);
+    }
+
+    /**
+     * @param views views of hot commands, take precedence over the registry, null reads commands only
+     */
+    public CommandReader(@NotNull CommandRegistry registry,
+                         CommandInterest interest,
+                         ICommandCapture capture,
+                         CommandViews views) {
+        if (registry == null) {
+            throw new IllegalArgumentException("registry must be not null");
+        }
+
+        this.registry = registry;
+        this.interest = interest;
+        this.capture = capture;
+        this.views = views;
+    }
+
+    /**
+     * Called before reading a packet, the views of the previous packet are reused.
+     */
+    public void reset() {
+        if (views != null) {
+            views.reset();
+        }
+    }
+
+    /**
+     * Reads the next command block.
+     *
+     * @return command or null if the command is not of interest
+     */
+    public Command read(@NotNull ByteBuffer buf) throws ParseException {
+        return Command.read(buf, registry, interest, capture, views);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.command;
+
+import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.IntObjectMap;
+import io.maritimus.atem4j.protocol.Utils;
+
+/**
+ * Decoders of command blocks by the raw 4 byte command id, the id is never turned into a string
+ * on the decoding path.
+ *
+ * Lookups are lock free, registration copies the table, so decoders are expected to be registered
+ * on startup. Applications can add decoders for commands the library doesn't know, e.g.
+ * <pre>
+ *     CommandRegistry.getDefault().register("CPvI", CmdSetPreviewInput::read);
+ * </pre>
+ */
+public class CommandRegistry {
+
+    private static final CommandRegistry DEFAULT = createDefault();
+
+    private volatile IntObjectMap<ICommandDecoder> decoders;
+
+    /**
+     * @return registry used by {@link Command#read(java.nio.ByteBuffer)}
+     */
+    public static CommandRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return new registry with decoders of all commands known by the library
+     */
+    public static CommandRegistry createDefault() {
+        CommandRegistry registry = new CommandRegistry();
+        registry.register("_ver", CmdFirmwareVersion::read);
+        registry.register("_pin", CmdProductId::read);
+        registry.register("_top", CmdTopology::read);
+        registry.register("PrgI", CmdProgramInput::read);
+        registry.register("PrvI", CmdPreviewInput::read);
+        registry.register("TlIn", CmdTallyByIndex::read);
+        registry.register("_TlC", CmdTallyChannelConfig::read);
+        registry.register("InPr", (buf, payloadSize) -> CmdInputProperties.read(buf));
+        registry.register("AMTl", CmdAudioMixerTally::read);
+        registry.register("TlSr", (buf, payloadSize) -> CmdTallyBySource.read(buf));
+        registry.register("InCm", CmdInitializationComplete::read);
+        return registry;
+    }
+
+    /**
+     * Creates an empty registry.
+     */
+    public CommandRegistry() {
+        decoders = new IntObjectMap<>();
+    }
+
+    public void register(@NotNull String command, @NotNull ICommandDecoder decoder) {
+        register(Utils.parseCommand(command), decoder);
+    }
+
+    /**
+     * Adds or replaces the decoder of the command.
+     */
+    public synchronized void register(int rawCommand, @NotNull ICommandDecoder decoder) {
+        if (decoder == null) {
+            throw new IllegalArgumentException("decoder must be not null");
+        }
+
+        IntObjectMap<ICommandDecoder> copy = new IntObjectMap<>(decoders);
+        copy.put(rawCommand, decoder);
+        decoders = copy;
+    }
+
+    public synchronized void unregister(int rawCommand) {
+        IntObjectMap<ICommandDecoder> copy = new IntObjectMap<>(decoders);
+        copy.remove(rawCommand);
+        decoders = copy;
+    }
+
+    /**
+     * @return decoder or null if the command is unknown
+     */
+    public ICommandDecoder get(int rawCommand) {
+        return decoders.get(rawCommand);
+    }
+
+    public int size() {
+        return decoders.size();
+    }
+}
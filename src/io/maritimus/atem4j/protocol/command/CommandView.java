@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.command;
+
+import io.maritimus.atem4j.protocol.ParseException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable flyweight reading a command straight out of the receive buffer.
+ *
+ * A view is valid only until its udp client polls the next packet, see {@link CommandViews}.
+ * Consumers keeping the command must take a {@link #copy()}.
+ */
+public abstract class CommandView extends Command {
+
+    protected ByteBuffer buf = null;
+    protected int offset = 0;           // absolute position of the payload
+    protected int payloadSize = 0;
+
+    final void wrap(ByteBuffer buf, int offset, int payloadSize) throws ParseException {
+        this.buf = buf;
+        this.offset = offset;
+        this.payloadSize = payloadSize;
+        validate();
+    }
+
+    /**
+     * Checks the payload once, so accessors don't have to.
+     */
+    protected abstract void validate() throws ParseException;
+
+    /**
+     * @return immutable command with the same content
+     */
+    public abstract Command copy();
+
+    protected ByteBuffer body() {
+        ByteBuffer body = buf.duplicate();
+        body.position(offset);
+        return body;
+    }
+
+    protected void checkPayloadSize(int minSize) throws ParseException {
+        if (payloadSize < minSize) {
+            throw new ParseException(
+                    "%s payloadSize = %d is too short, %d expected",
+                    getClass().getSimpleName(),
+                    payloadSize,
+                    minSize
+            );
+        }
+    }
+
+    @Override
+    public String toString() {
+        return buf == null ? getClass().getSimpleName() + " unbound" : copy().toString();
+    }
+}
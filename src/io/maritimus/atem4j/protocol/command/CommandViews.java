@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.command;
+
+import io.maritimus.atem4j.protocol.IntObjectMap;
+import io.maritimus.atem4j.protocol.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Views for the hot commands TlSr, TlIn, AMTl, PrgI and PrvI, reused packet by packet.
+ *
+ * A packet may hold several blocks of a command, so each command has its own growing set of
+ * views, all of them are reused by the next packet after {@link #reset()}. Belongs to a single
+ * consumer thread.
+ */
+public final class CommandViews {
+
+    private final IntObjectMap<Slot> slots = new IntObjectMap<>();
+    private final List<Slot> all = new ArrayList<>();
+
+    public CommandViews() {
+        register("TlSr", TallyBySourceView::new);
+        register("TlIn", TallyByIndexView::new);
+        register("AMTl", AudioMixerTallyView::new);
+        register("PrgI", ProgramInputView::new);
+        register("PrvI", PreviewInputView::new);
+    }
+
+    private void register(String command, Supplier<CommandView> factory) {
+        Slot slot = new Slot(factory);
+        slots.put(Utils.parseCommand(command), slot);
+        all.add(slot);
+    }
+
+    /**
+     * @return unbound view or null if the command has no view
+     */
+    CommandView acquire(int rawCommand) {
+        Slot slot = slots.get(rawCommand);
+        return slot == null ? null : slot.acquire();
+    }
+
+    /**
+     * Makes every view available again, views handed out before must not be used any more.
+     */
+    public void reset() {
+        for (int j = 0; j < all.size(); j++) {
+            all.get(j).used = 0;
+        }
+    }
+
+    private static final class Slot {
+        final Supplier<CommandView> factory;
+        CommandView[] views = new CommandView[1];
+        int used = 0;
+
+        Slot(Supplier<CommandView> factory) {
+            this.factory = factory;
+        }
+
+        CommandView acquire() {
+            if (used == views.length) {
+                views = Arrays.copyOf(views, views.length * 2);
+            }
+
+            CommandView view = views[used];
+            if (view == null) {
+                view = factory.get();
+                views[used] = view;
+            }
+            used++;
+            return view;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.command;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Debugging hook, sees the raw bytes of every command block, including the skipped ones.
+ */
+@FunctionalInterface
+public interface ICommandCapture {
+
+    /**
+     * @param block read only view of the whole block starting with its size, valid only during the call
+     */
+    void onBlock(int rawCommand, ByteBuffer block);
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.command;
+
+import io.maritimus.atem4j.protocol.ParseException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the payload of one command block, see {@link CommandRegistry}.
+ */
+@FunctionalInterface
+public interface ICommandDecoder {
+
+    /**
+     * @param buf positioned at the payload, the decoder must read exactly payloadSize bytes
+     * @param payloadSize size of the payload without the block header
+     */
+    Command decode(ByteBuffer buf, int payloadSize) throws ParseException;
+}
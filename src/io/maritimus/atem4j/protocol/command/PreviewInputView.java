@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.command;
+
+import io.maritimus.atem4j.protocol.ParseException;
+
+/**
+ * Flyweight of PrvI, see {@link CmdPreviewInput}.
+ */
+public final class PreviewInputView extends CommandView {
+
+    public int me() {
+        return buf.get(offset) & 0xFF;
+    }
+
+    public int videoSource() {
+        return buf.getChar(offset + 2);
+    }
+
+    @Override
+    protected void validate() throws ParseException {
+        checkPayloadSize(8);
+    }
+
+    @Override
+    public CmdPreviewInput copy() {
+        return CmdPreviewInput.read(body(), payloadSize);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.command;
+
+import io.maritimus.atem4j.protocol.ParseException;
+
+/**
+ * Flyweight of TlIn, see {@link CmdTallyByIndex}.
+ */
+public final class TallyByIndexView extends CommandView {
+
+    public int count() {
+        return buf.getChar(offset);
+    }
+
+    public int flagsAt(int index) {
+        return buf.get(offset + 2 + index) & 0xFF;
+    }
+
+    public boolean isOnProgram(int index) {
+        return (flagsAt(index) & CmdTallyByIndex.FLAG_PROGRAM) != 0;
+    }
+
+    public boolean isOnPreview(int index) {
+        return (flagsAt(index) & CmdTallyByIndex.FLAG_PREVIEW) != 0;
+    }
+
+    @Override
+    protected void validate() throws ParseException {
+        checkPayloadSize(2);
+        checkPayloadSize(2 + count());
+    }
+
+    @Override
+    public CmdTallyByIndex copy() {
+        return CmdTallyByIndex.read(body(), payloadSize);
+    }
+}
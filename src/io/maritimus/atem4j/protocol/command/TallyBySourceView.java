@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.command;
+
+import io.maritimus.atem4j.protocol.ParseException;
+
+/**
+ * Flyweight of TlSr, see {@link CmdTallyBySource}.
+ */
+public final class TallyBySourceView extends CommandView {
+
+    public int count() {
+        return buf.getChar(offset);
+    }
+
+    public int sourceAt(int index) {
+        return buf.getChar(offset + 2 + index * 3);
+    }
+
+    public int statusAt(int index) {
+        return buf.get(offset + 4 + index * 3) & 0xFF;
+    }
+
+    public int getStatus(int videoSource) {
+        int count = count();
+        for (int j = 0; j < count; j++) {
+            if (sourceAt(j) == videoSource) {
+                return statusAt(j);
+            }
+        }
+        return CmdTallyBySource.STATUS_NONE;
+    }
+
+    public boolean isOnProgram(int videoSource) {
+        return (getStatus(videoSource) & CmdTallyBySource.STATUS_PROGRAM) != 0;
+    }
+
+    public boolean isOnPreview(int videoSource) {
+        return (getStatus(videoSource) & CmdTallyBySource.STATUS_PREVIEW) != 0;
+    }
+
+    /**
+     * @return true if the tally has the same sources with the same statuses in the same order
+     */
+    public boolean matches(CmdTallyBySource tally) {
+        int count = count();
+        if (tally == null || tally.length != count) {
+            return false;
+        }
+
+        for (int j = 0; j < count; j++) {
+            if (tally.statuses[j][0] != sourceAt(j) || tally.statuses[j][1] != statusAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void validate() throws ParseException {
+        checkPayloadSize(2);
+        checkPayloadSize(2 + count() * 3);
+    }
+
+    @Override
+    public CmdTallyBySource copy() {
+        return CmdTallyBySource.read(body());
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.concurrent;
+
+import com.sun.istack.internal.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timer wheel for a single thread.
+ *
+ * Timers are intrusive and reusable, so scheduling, re-scheduling and cancelling are O(1) and
+ * allocation free. A timer never fires before its deadline and at most one tick after it,
+ * provided {@link #expire(long)} is called in time, see {@link #nanosToNextExpiry(long, long)}.
+ */
+public class HashedTimerWheel {
+    private static final Logger log = LoggerFactory.getLogger(HashedTimerWheel.class);
+
+    public static final long DEFAULT_TICK_NANOS = 1_000_000;  // 1 ms
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final int BUCKET_NONE = -1;
+    private static final int BUCKET_EXPIRING = -2;
+
+    public final long tickNanos;
+    public final int wheelSize;
+
+    private final Timer[] buckets;      // sentinels of circular lists
+    private final long[] occupied;      // bit per non-empty bucket
+    private final int mask;
+    private final long startNanos;
+
+    private long currentTick = 0;       // next tick to expire
+    private int size = 0;
+
+    public HashedTimerWheel() {
+        this(DEFAULT_TICK_NANOS, DEFAULT_WHEEL_SIZE, System.nanoTime());
+    }
+
+    public HashedTimerWheel(long tickNanos, int wheelSize, long startNanos) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException(String.format("tickNanos = %d must be positive", tickNanos));
+        }
+
+        if (wheelSize < 64 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException(String.format("wheelSize = %d must be a power of 2 >= 64", wheelSize));
+        }
+
+        this.tickNanos = tickNanos;
+        this.wheelSize = wheelSize;
+        this.mask = wheelSize - 1;
+        this.startNanos = startNanos;
+        this.buckets = new Timer[wheelSize];
+        this.occupied = new long[wheelSize / 64];
+
+        for (int j = 0; j < wheelSize; j++) {
+            Timer sentinel = new Timer(null);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            buckets[j] = sentinel;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void schedule(@NotNull Timer timer, long delayNanos) {
+        scheduleAt(timer, System.nanoTime() + delayNanos);
+    }
+
+    /**
+     * (Re)schedules the timer, a scheduled timer is moved to the new deadline.
+     */
+    public void scheduleAt(@NotNull Timer timer, long deadlineNanos) {
+        if (timer == null) {
+            throw new IllegalArgumentException("timer must be not null");
+        }
+
+        if (timer.isScheduled()) {
+            unlink(timer);
+        }
+
+        long elapsed = deadlineNanos - startNanos;
+        long tick = elapsed <= 0 ? 0 : (elapsed + tickNanos - 1) / tickNanos;
+        if (tick < currentTick) {
+            tick = currentTick;
+        }
+
+        int bucket = (int) tick & mask;
+        Timer head = buckets[bucket];
+
+        timer.deadlineNanos = deadlineNanos;
+        timer.tick = tick;
+        timer.bucket = bucket;
+        timer.prev = head.prev;
+        timer.next = head;
+        head.prev.next = timer;
+        head.prev = timer;
+
+        occupied[bucket >>> 6] |= 1L << bucket;
+        size = size + 1;
+    }
+
+    public void cancel(@NotNull Timer timer) {
+        if (timer.isScheduled()) {
+            unlink(timer);
+        } else if (timer.bucket == BUCKET_EXPIRING) {
+            timer.bucket = BUCKET_NONE;
+        }
+    }
+
+    /**
+     * Fires all timers due at {@code nowNanos}.
+     *
+     * @return amount of fired timers
+     */
+    public int expire(long nowNanos) {
+        long nowTick = (nowNanos - startNanos) / tickNanos;
+        if (nowTick < currentTick) {
+            return 0;
+        }
+
+        Timer expired = null;
+        long ticks = Math.min(nowTick - currentTick + 1, wheelSize);
+        for (long j = 0; j < ticks; j++) {
+            int bucket = (int) (currentTick + j) & mask;
+            if ((occupied[bucket >>> 6] & (1L << bucket)) == 0) {
+                continue;
+            }
+
+            Timer head = buckets[bucket];
+            Timer timer = head.next;
+            while (timer != head) {
+                Timer next = timer.next;
+                if (timer.tick <= nowTick) {
+                    unlink(timer);
+                    timer.bucket = BUCKET_EXPIRING;
+                    timer.nextExpired = expired;
+                    expired = timer;
+                }
+                timer = next;
+            }
+        }
+        currentTick = nowTick + 1;
+
+        // fire in tick order, tasks are free to reschedule or cancel any timer,
+        // a timer cancelled or rescheduled by an earlier task doesn't fire,
+        // a failed task is logged, so the timers after it still fire
+        expired = reverse(expired);
+        int fired = 0;
+        while (expired != null) {
+            Timer timer = expired;
+            expired = timer.nextExpired;
+            timer.nextExpired = null;
+            if (timer.bucket != BUCKET_EXPIRING) {
+                continue;
+            }
+            timer.bucket = BUCKET_NONE;
+            try {
+                timer.task.run();
+            } catch (RuntimeException ex) {
+                log.error("timer task is failed", ex);
+            }
+            fired++;
+        }
+
+        return fired;
+    }
+
+    /**
+     * @return nanos until the next non-empty bucket is due, {@code maxNanos} if there is nothing scheduled
+     */
+    public long nanosToNextExpiry(long nowNanos, long maxNanos) {
+        if (size == 0) {
+            return maxNanos;
+        }
+
+        int start = (int) currentTick & mask;
+        for (int distance = 0; distance < wheelSize; ) {
+            int bucket = (start + distance) & mask;
+            long word = occupied[bucket >>> 6] >>> (bucket & 63);
+            if (word != 0) {
+                distance += Long.numberOfTrailingZeros(word);
+                long due = startNanos + (currentTick + distance) * tickNanos;
+                return Math.max(0, Math.min(maxNanos, due - nowNanos));
+            }
+            distance += 64 - (bucket & 63);
+        }
+
+        return maxNanos;
+    }
+
+    private void unlink(Timer timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+
+        Timer head = buckets[timer.bucket];
+        if (head.next == head) {
+            occupied[timer.bucket >>> 6] &= ~(1L << timer.bucket);
+        }
+
+        timer.prev = null;
+        timer.next = null;
+        timer.bucket = BUCKET_NONE;
+        size = size - 1;
+    }
+
+    private static Timer reverse(Timer list) {
+        Timer reversed = null;
+        while (list != null) {
+            Timer next = list.nextExpired;
+            list.nextExpired = reversed;
+            reversed = list;
+            list = next;
+        }
+        return reversed;
+    }
+
+    /**
+     * Reusable timer, belongs to the thread of its wheel.
+     */
+    public static final class Timer {
+        final Runnable task;
+
+        long deadlineNanos = 0;
+        long tick = 0;
+        int bucket = BUCKET_NONE;
+        Timer prev = null;
+        Timer next = null;
+        Timer nextExpired = null;
+
+        public Timer(Runnable task) {
+            this.task = task;
+        }
+
+        public boolean isScheduled() {
+            return bucket >= 0;
+        }
+
+        public long getDeadlineNanos() {
+            return deadlineNanos;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.concurrent;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * How a consumer waits for a producer. One strategy instance serves exactly one consumer.
+ */
+public interface IWaitStrategy {
+
+    /**
+     * Waits until {@code ready} returns true or {@code timeoutNanos} elapses.
+     *
+     * @return true if ready, false on timeout
+     */
+    boolean await(BooleanSupplier ready, long timeoutNanos) throws InterruptedException;
+
+    /**
+     * Wakes the consumer up, called by the producer after publishing.
+     */
+    void signal();
+
+    /**
+     * Backs off after {@code idleCount} consecutive empty polls of a source which nobody signals,
+     * ex.: a non-blocking channel.
+     */
+    void idle(int idleCount) throws InterruptedException;
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of positive values with power of 2 buckets: bucket 0 counts 1, bucket 1 counts 2..3,
+ * bucket 2 counts 4..7 and so on, the last bucket counts everything above. Recording is cheap
+ * and allocation free, counters may be read by any thread.
+ */
+public class Log2Histogram {
+
+    public static final int DEFAULT_BUCKETS = 12;   // up to 2048+
+
+    public final int buckets;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong max = new AtomicLong();
+
+    public Log2Histogram() {
+        this(DEFAULT_BUCKETS);
+    }
+
+    public Log2Histogram(int buckets) {
+        if (buckets <= 0 || buckets > 63) {
+            throw new IllegalArgumentException(String.format("buckets = %d must be in [1,63]", buckets));
+        }
+
+        this.buckets = buckets;
+        this.counts = new AtomicLongArray(buckets);
+    }
+
+    /**
+     * Records a value, values below 1 are counted as 1.
+     */
+    public void record(long value) {
+        int bucket = value <= 1 ? 0 : 63 - Long.numberOfLeadingZeros(value);
+        counts.incrementAndGet(Math.min(bucket, buckets - 1));
+        if (value > max.get()) {
+            // recorded by many threads of a stage at once
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    /**
+     * @return the smallest value counted by the bucket
+     */
+    public static long getBucketMin(int bucket) {
+        return 1L << bucket;
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (int j = 0; j < buckets; j++) {
+            total += counts.get(j);
+        }
+        return total;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return upper bound of the bucket holding the percentile, 0 if nothing is recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = getTotal();
+        if (total == 0) {
+            return 0;
+        }
+
+        long max = this.max.get();
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int j = 0; j < buckets; j++) {
+            seen += counts.get(j);
+            if (seen >= Math.max(rank, 1)) {
+                return j == buckets - 1 ? max : Math.min(getBucketMin(j + 1) - 1, max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        for (int j = 0; j < buckets; j++) {
+            counts.set(j, 0);
+        }
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int j = 0; j < buckets; j++) {
+            long count = counts.get(j);
+            if (count == 0) {
+                continue;
+            }
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(getBucketMin(j)).append(j == buckets - 1 ? "+" : "").append(": ").append(count);
+        }
+        return sb.append("] max=").append(max.get()).toString();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.concurrent;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Spins, then yields, then sleeps for a short period between checks. The producer never
+ * has to wake anybody up, the price is up to {@code sleepNanos} of extra latency.
+ */
+public class SleepingWaitStrategy implements IWaitStrategy {
+
+    public static final int DEFAULT_SPINS = 100;
+    public static final int DEFAULT_YIELDS = 100;
+    public static final long DEFAULT_SLEEP_NANOS = 100_000;
+
+    public final int spins;
+    public final int yields;
+    public final long sleepNanos;
+
+    public SleepingWaitStrategy() {
+        this(DEFAULT_SPINS, DEFAULT_YIELDS, DEFAULT_SLEEP_NANOS);
+    }
+
+    public SleepingWaitStrategy(int spins, int yields, long sleepNanos) {
+        if (spins < 0 || yields < 0) {
+            throw new IllegalArgumentException(String.format("spins = %d and yields = %d must be >= 0", spins, yields));
+        }
+
+        if (sleepNanos <= 0) {
+            throw new IllegalArgumentException(String.format("sleepNanos = %d must be positive", sleepNanos));
+        }
+
+        this.spins = spins;
+        this.yields = yields;
+        this.sleepNanos = sleepNanos;
+    }
+
+    @Override
+    public boolean await(BooleanSupplier ready, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        int counter = 0;
+
+        while (!ready.getAsBoolean()) {
+            if (deadline - System.nanoTime() <= 0) {
+                return false;
+            }
+
+            idle(counter);
+            if (counter < spins + yields) {
+                counter++;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void idle(int idleCount) throws InterruptedException {
+        if (idleCount < spins) {
+            return;
+        }
+
+        if (idleCount < spins + yields) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(sleepNanos);
+        }
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    @Override
+    public void signal() {
+        // consumer polls by itself
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.concurrent;
+
+import com.sun.istack.internal.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and one consumer thread.
+ *
+ * Slots are preallocated, so neither {@link #offer(Object)} nor {@link #poll()} allocates.
+ * A producer may stage a batch of elements and publish it by one {@link #flush()}.
+ * {@link #offer(Object)}, {@link #stage(Object)} and {@link #flush()} must only be called by the producer,
+ * {@link #poll()}, {@link #clear()} and {@link #await(long)} only by the consumer, the counters may be
+ * read by anyone.
+ */
+public class SpscRingBuffer<E> {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    public final int capacity;
+    public final IWaitStrategy waitStrategy;
+
+    private final Object[] slots;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();   // next slot to poll, written by consumer
+    private final AtomicLong tail = new AtomicLong();   // next slot to offer, written by producer
+
+    private long headCache = 0;     // producer's view of head
+    private long tailCache = 0;     // consumer's view of tail
+    private int staged = 0;         // written but not published by producer
+
+    private volatile long highWaterMark = 0;
+    private volatile long rejected = 0;
+
+    private final BooleanSupplier notEmpty = () -> !isEmpty();
+
+    public SpscRingBuffer() {
+        this(DEFAULT_CAPACITY, new BlockingWaitStrategy());
+    }
+
+    public SpscRingBuffer(int capacity, @NotNull IWaitStrategy waitStrategy) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException(String.format("capacity = %d must be a positive power of 2", capacity));
+        }
+
+        if (waitStrategy == null) {
+            throw new IllegalArgumentException("waitStrategy must be not null");
+        }
+
+        this.capacity = capacity;
+        this.waitStrategy = waitStrategy;
+        this.slots = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Publishes the element together with all staged ones and signals the consumer.
+     *
+     * @return false if the buffer is full, the element is not added then
+     */
+    public boolean offer(@NotNull E element) {
+        if (!stage(element)) {
+            return false;
+        }
+
+        flush();
+        return true;
+    }
+
+    /**
+     * Puts the element into the buffer without publishing it, staged elements become visible
+     * to the consumer all at once by {@link #flush()}.
+     *
+     * @return false if the buffer is full, the element is not added then
+     */
+    public boolean stage(@NotNull E element) {
+        if (element == null) {
+            throw new IllegalArgumentException("element must be not null");
+        }
+
+        long t = tail.get() + staged;
+        if (t - headCache >= capacity) {
+            headCache = head.get();
+            if (t - headCache >= capacity) {
+                rejected = rejected + 1;
+                return false;
+            }
+        }
+
+        slots[(int) t & mask] = element;
+        staged++;
+        return true;
+    }
+
+    /**
+     * Publishes the staged elements with a single write and a single signal.
+     *
+     * @return amount of published elements
+     */
+    public int flush() {
+        int count = staged;
+        if (count == 0) {
+            return 0;
+        }
+
+        long t = tail.get() + count;
+        tail.set(t);
+        staged = 0;
+
+        long depth = t - head.get();
+        if (depth > highWaterMark) {
+            highWaterMark = depth;
+        }
+
+        waitStrategy.signal();
+        return count;
+    }
+
+    /**
+     * @return the oldest element or null if the buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long h = head.get();
+        if (h >= tailCache) {
+            tailCache = tail.get();
+            if (h >= tailCache) {
+                return null;
+            }
+        }
+
+        int index = (int) h & mask;
+        E element = (E) slots[index];
+        slots[index] = null;
+        head.lazySet(h + 1);
+        return element;
+    }
+
+    /**
+     * Waits by the wait strategy until there is something to poll.
+     *
+     * @return true if the buffer is not empty, false on timeout
+     */
+    public boolean await(long timeoutNanos) throws InterruptedException {
+        return waitStrategy.await(notEmpty, timeoutNanos);
+    }
+
+    /**
+     * Drops all published elements.
+     */
+    public void clear() {
+        while (poll() != null) {
+            // dropping
+        }
+    }
+
+    public boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    /**
+     * @return current depth, approximate while the producer and the consumer are running
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return size < 0 ? 0 : (int) Math.min(size, capacity);
+    }
+
+    /**
+     * @return max depth seen by the producer
+     */
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * @return amount of elements rejected because the buffer was full
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s size=%d capacity=%d highWaterMark=%d rejected=%d",
+                getClass().getSimpleName(),
+                size(),
+                capacity,
+                highWaterMark,
+                rejected
+        );
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a pipeline stage: how much work was waiting when the stage was serviced and
+ * how long the service took. Thread safe, a stage may be serviced by many threads.
+ */
+public class StageMetrics {
+
+    public final String name;
+
+    /** service time of a run of the stage, in microseconds */
+    public final Log2Histogram serviceMicros = new Log2Histogram(24);
+
+    /** input queue depth when the stage was serviced */
+    public final Log2Histogram depths = new Log2Histogram();
+
+    private final AtomicLong services = new AtomicLong();
+    private final AtomicLong items = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    public StageMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param items amount of items processed by the run
+     * @param serviceNanos duration of the run
+     * @param depth input queue depth at the start of the run
+     */
+    public void record(int items, long serviceNanos, int depth) {
+        services.incrementAndGet();
+        this.items.addAndGet(items);
+        busyNanos.addAndGet(serviceNanos);
+        serviceMicros.record(serviceNanos / 1000);
+        depths.record(depth);
+    }
+
+    public long getServices() {
+        return services.get();
+    }
+
+    public long getItems() {
+        return items.get();
+    }
+
+    public long getBusyNanos() {
+        return busyNanos.get();
+    }
+
+    /**
+     * @return mean service time per item, 0 if nothing is processed
+     */
+    public long getMeanNanosPerItem() {
+        long count = items.get();
+        return count == 0 ? 0 : busyNanos.get() / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s services=%d items=%d ns/item=%d service us p50=%d p99=%d depth p50=%d max=%d",
+                name,
+                getServices(),
+                getItems(),
+                getMeanNanosPerItem(),
+                serviceMicros.getPercentile(0.50),
+                serviceMicros.getPercentile(0.99),
+                depths.getPercentile(0.50),
+                depths.getMax()
+        );
+    }
+}
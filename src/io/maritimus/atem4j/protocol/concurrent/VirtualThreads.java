@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.concurrent;
+
+import com.sun.istack.internal.NotNull;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Access to virtual threads without a compile time dependency on a newer jdk. Where virtual threads
+ * are not available, the factories fall back to daemon platform threads.
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method IS_VIRTUAL;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method isVirtual = null;
+
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            builderName = builder.getMethod("name", String.class, long.class);
+            builderFactory = builder.getMethod("factory");
+            isVirtual = Thread.class.getMethod("isVirtual");
+            // preview api on some jdks, check it is really usable
+            ofVirtual.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+            ofVirtual = null;
+        }
+
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        IS_VIRTUAL = isVirtual;
+    }
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    public static boolean isVirtual(@NotNull Thread thread) {
+        if (!isSupported()) {
+            return false;
+        }
+
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(thread);
+        } catch (ReflectiveOperationException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a factory of virtual threads named "&lt;prefix&gt;-N", or of daemon platform threads
+     * when virtual threads are not supported.
+     */
+    public static ThreadFactory newThreadFactory(@NotNull String prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("prefix must be not null");
+        }
+
+        if (isSupported()) {
+            try {
+                Object builder = OF_VIRTUAL.invoke(null);
+                builder = BUILDER_NAME.invoke(builder, prefix + "-", 0L);
+                return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            } catch (ReflectiveOperationException ex) {
+                throw new IllegalStateException("Can't create virtual thread factory", ex);
+            }
+        }
+
+        return newPlatformThreadFactory(prefix);
+    }
+
+    /**
+     * Creates an executor starting a virtual thread per task. Where virtual threads are not supported,
+     * it pools daemon platform threads, which end after a minute idle. Neither needs a shutdown.
+     */
+    public static Executor newThreadPerTaskExecutor(@NotNull String prefix) {
+        ThreadFactory threadFactory = newThreadFactory(prefix);
+        if (isSupported()) {
+            return runnable -> threadFactory.newThread(runnable).start();
+        }
+
+        return new ThreadPoolExecutor(
+                0, Integer.MAX_VALUE,
+                60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                threadFactory
+        );
+    }
+
+    public static ThreadFactory newPlatformThreadFactory(@NotNull String prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("prefix must be not null");
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, String.format("%s-%d", prefix, counter.getAndIncrement()));
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.concurrent;
+
+/**
+ * Named wait strategies, selectable per client. Strategies keep per consumer state,
+ * so every consumer gets its own instance from {@link #create()}.
+ */
+public enum WaitStrategyType {
+
+    /** park until signalled, near zero cpu while idle */
+    BLOCKING,
+
+    /** spin, yield, then sleep 0.1 ms between checks */
+    SLEEPING,
+
+    /** spin, then yield between checks */
+    YIELDING,
+
+    /** re-check without pause, needs a dedicated core */
+    BUSY_SPIN;
+
+    public IWaitStrategy create() {
+        switch (this) {
+            case SLEEPING:
+                return new SleepingWaitStrategy();
+
+            case YIELDING:
+                return new YieldingWaitStrategy();
+
+            case BUSY_SPIN:
+                return new BusySpinWaitStrategy();
+
+            case BLOCKING:
+            default:
+                return new BlockingWaitStrategy();
+        }
+    }
+}
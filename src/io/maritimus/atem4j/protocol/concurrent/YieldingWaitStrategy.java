@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.concurrent;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Spins for a while, then yields the cpu between checks. Low latency without burning
+ * a core completely, but the consumer thread is never descheduled by itself.
+ */
+public class YieldingWaitStrategy implements IWaitStrategy {
+
+    public static final int DEFAULT_SPINS = 100;
+
+    public final int spins;
+
+    public YieldingWaitStrategy() {
+        this(DEFAULT_SPINS);
+    }
+
+    public YieldingWaitStrategy(int spins) {
+        if (spins < 0) {
+            throw new IllegalArgumentException(String.format("spins = %d must be >= 0", spins));
+        }
+
+        this.spins = spins;
+    }
+
+    @Override
+    public boolean await(BooleanSupplier ready, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        int counter = 0;
+
+        while (!ready.getAsBoolean()) {
+            if (deadline - System.nanoTime() <= 0) {
+                return false;
+            }
+
+            idle(counter);
+            if (counter < spins) {
+                counter++;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void signal() {
+        // consumer polls by itself
+    }
+
+    @Override
+    public void idle(int idleCount) throws InterruptedException {
+        if (idleCount >= spins) {
+            Thread.yield();
+        }
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.tally;
+
+import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.command.CmdInputProperties;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Objects;
+
+/**
+ * Immutable input properties by video source id: names, port types and availability.
+ *
+ * Columns are primitive arrays over the dense indexes of a {@link SourceIndex}, so lookups by
+ * source id don't box. Built by a {@link Builder} on the protocol thread.
+ */
+public final class InputTable {
+
+    public static final int NONE = -1;
+
+    /** changes reported by {@link Builder#put(CmdInputProperties)} */
+    public static final int CHANGED_NAMES = 0b01;
+    public static final int CHANGED_PROPERTIES = 0b10;
+
+    public static final InputTable EMPTY = new Builder().build();
+
+    public final SourceIndex index;
+
+    private final String[] shortNames;
+    private final String[] longNames;
+    private final int[] portTypes;
+    private final int[] externalPortTypes;
+    private final int[] availabilities;
+    private final int[] meAvailabilities;
+
+    private InputTable(Builder builder) {
+        int size = builder.size;
+        this.index = builder.index;
+        this.shortNames = Arrays.copyOf(builder.shortNames, size);
+        this.longNames = Arrays.copyOf(builder.longNames, size);
+        this.portTypes = Arrays.copyOf(builder.portTypes, size);
+        this.externalPortTypes = Arrays.copyOf(builder.externalPortTypes, size);
+        this.availabilities = Arrays.copyOf(builder.availabilities, size);
+        this.meAvailabilities = Arrays.copyOf(builder.meAvailabilities, size);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public boolean contains(int source) {
+        return index.contains(source);
+    }
+
+    public String getShortName(int source) {
+        int j = index.indexOf(source);
+        return j == SourceIndex.NONE || shortNames[j] == null ? "?" + source : shortNames[j];
+    }
+
+    public String getLongName(int source) {
+        int j = index.indexOf(source);
+        return j == SourceIndex.NONE || longNames[j] == null ? "Input " + source : longNames[j];
+    }
+
+    /**
+     * @return port type or {@link #NONE} for an unknown source
+     */
+    public int getPortType(int source) {
+        return column(portTypes, source);
+    }
+
+    public int getExternalPortType(int source) {
+        return column(externalPortTypes, source);
+    }
+
+    public int getAvailability(int source) {
+        return column(availabilities, source);
+    }
+
+    public int getMeAvailability(int source) {
+        return column(meAvailabilities, source);
+    }
+
+    public int sourceAt(int j) {
+        return index.sourceAt(j);
+    }
+
+    /**
+     * @return true if the source has the same names in both tables
+     */
+    public boolean hasSameNames(int source, @NotNull InputTable other) {
+        int j = index.indexOf(source);
+        int k = other.index.indexOf(source);
+        if (j == SourceIndex.NONE || k == SourceIndex.NONE) {
+            return j == k;
+        }
+
+        return Objects.equals(shortNames[j], other.shortNames[k])
+                && Objects.equals(longNames[j], other.longNames[k]);
+    }
+
+    private int column(int[] values, int source) {
+        int j = index.indexOf(source);
+        return j == SourceIndex.NONE ? NONE : values[j];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(getClass().getSimpleName());
+        for (int j = 0; j < size(); j++) {
+            sb.append(' ').append(index.sourceAt(j)).append('=').append(shortNames[j]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Mutable table of a single thread, detects changes by content and dedupes names.
+     */
+    public static final class Builder {
+        private int[] sources = new int[16];
+        private String[] shortNames = new String[16];
+        private String[] longNames = new String[16];
+        private int[] portTypes = new int[16];
+        private int[] externalPortTypes = new int[16];
+        private int[] availabilities = new int[16];
+        private int[] meAvailabilities = new int[16];
+        private int size = 0;
+
+        private SourceIndex index = SourceIndex.EMPTY;  // of sources[0..size), rebuilt by a new source only
+        private final HashMap<String, String> names = new HashMap<>();
+
+        public Builder() {
+        }
+
+        public Builder(@NotNull InputTable table) {
+            int capacity = Math.max(table.size(), sources.length);
+            size = table.size();
+            index = table.index;
+            sources = Arrays.copyOf(table.index.toArray(), capacity);
+            shortNames = Arrays.copyOf(table.shortNames, capacity);
+            longNames = Arrays.copyOf(table.longNames, capacity);
+            portTypes = Arrays.copyOf(table.portTypes, capacity);
+            externalPortTypes = Arrays.copyOf(table.externalPortTypes, capacity);
+            availabilities = Arrays.copyOf(table.availabilities, capacity);
+            meAvailabilities = Arrays.copyOf(table.meAvailabilities, capacity);
+        }
+
+        /**
+         * @return changes, {@link #CHANGED_NAMES} and {@link #CHANGED_PROPERTIES} bits, 0 for none
+         */
+        public int put(@NotNull CmdInputProperties props) {
+            int j = indexOf(props.videoSource);
+            boolean isNew = j == NONE;
+            if (isNew) {
+                j = add(props.videoSource);
+            }
+
+            int changes = setNamesAt(j, props.shortName, props.longName) ? CHANGED_NAMES : 0;
+            boolean isChanged = isNew
+                    || portTypes[j] != props.portType
+                    || externalPortTypes[j] != props.externalPortType
+                    || availabilities[j] != props.availability
+                    || meAvailabilities[j] != props.meAvailability;
+
+            portTypes[j] = props.portType;
+            externalPortTypes[j] = props.externalPortType;
+            availabilities[j] = props.availability;
+            meAvailabilities[j] = props.meAvailability;
+            return isChanged ? changes | CHANGED_PROPERTIES : changes;
+        }
+
+        /**
+         * @return true if the names changed
+         */
+        public boolean setNames(int source, String shortName, String longName) {
+            int j = indexOf(source);
+            if (j == NONE) {
+                j = add(source);
+                setNamesAt(j, shortName, longName);
+                return true;
+            }
+            return setNamesAt(j, shortName, longName);
+        }
+
+        public InputTable build() {
+            return new InputTable(this);
+        }
+
+        private boolean setNamesAt(int j, String shortName, String longName) {
+            if (Objects.equals(shortNames[j], shortName) && Objects.equals(longNames[j], longName)) {
+                return false;
+            }
+
+            shortNames[j] = intern(shortName);
+            longNames[j] = intern(longName);
+            return true;
+        }
+
+        private String intern(String name) {
+            if (name == null) {
+                return null;
+            }
+
+            String pooled = names.putIfAbsent(name, name);
+            return pooled == null ? name : pooled;
+        }
+
+        private int indexOf(int source) {
+            return index.indexOf(source);
+        }
+
+        private int add(int source) {
+            if (size == sources.length) {
+                int capacity = size * 2;
+                sources = Arrays.copyOf(sources, capacity);
+                shortNames = Arrays.copyOf(shortNames, capacity);
+                longNames = Arrays.copyOf(longNames, capacity);
+                portTypes = Arrays.copyOf(portTypes, capacity);
+                externalPortTypes = Arrays.copyOf(externalPortTypes, capacity);
+                availabilities = Arrays.copyOf(availabilities, capacity);
+                meAvailabilities = Arrays.copyOf(meAvailabilities, capacity);
+            }
+
+            int j = size++;
+            sources[j] = source;
+            portTypes[j] = NONE;
+            externalPortTypes[j] = NONE;
+            availabilities[j] = NONE;
+            meAvailabilities[j] = NONE;
+
+            // new sources are rare, they come with the topology
+            index = SourceIndex.of(Arrays.copyOf(sources, size));
+            return j;
+        }
+    }
+}
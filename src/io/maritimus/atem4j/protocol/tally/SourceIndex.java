@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.tally;
+
+import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.Utils;
+
+import java.util.Arrays;
+
+/**
+ * Immutable mapping of sparse video source ids (0..20, 1000, 2001, 3010, 10010, ...) to dense
+ * indexes 0..size-1 in the order the switcher reports them. Built once per topology, lookups are
+ * O(1) and allocation free. A duplicated id resolves to its first index.
+ */
+public final class SourceIndex {
+
+    public static final int NONE = -1;
+
+    public static final SourceIndex EMPTY = new SourceIndex(new int[0]);
+
+    private final int[] sources;    // dense index -> source id
+    private final int[] table;      // open addressing by source id -> dense index or NONE
+    private final int mask;
+
+    public static SourceIndex of(@NotNull int... sources) {
+        if (sources == null) {
+            throw new IllegalArgumentException("sources must be not null");
+        }
+
+        return new SourceIndex(Arrays.copyOf(sources, sources.length));
+    }
+
+    private SourceIndex(int[] sources) {
+        int capacity = Integer.highestOneBit(Math.max(sources.length, 2) * 2 - 1) << 1;
+        this.sources = sources;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(table, NONE);
+
+        for (int index = 0; index < sources.length; index++) {
+            int j = Utils.mixHash(sources[index]) & mask;
+            boolean isDuplicate = false;
+            for (; table[j] != NONE; j = (j + 1) & mask) {
+                if (sources[table[j]] == sources[index]) {
+                    isDuplicate = true;
+                    break;
+                }
+            }
+            if (!isDuplicate) {
+                table[j] = index;
+            }
+        }
+    }
+
+    public int size() {
+        return sources.length;
+    }
+
+    /**
+     * @return dense index of the source or {@link #NONE}
+     */
+    public int indexOf(int source) {
+        for (int j = Utils.mixHash(source) & mask; ; j = (j + 1) & mask) {
+            int index = table[j];
+            if (index == NONE || sources[index] == source) {
+                return index;
+            }
+        }
+    }
+
+    public boolean contains(int source) {
+        return indexOf(source) != NONE;
+    }
+
+    public int sourceAt(int index) {
+        return sources[index];
+    }
+
+    /**
+     * @return true if the index holds exactly the given sources in the given order
+     */
+    public boolean matches(int[] sources, int length) {
+        if (length != this.sources.length) {
+            return false;
+        }
+
+        for (int j = 0; j < length; j++) {
+            if (sources[j] != this.sources[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(sources, sources.length);
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("%s %s", getClass().getSimpleName(), Arrays.toString(sources));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.tally;
+
+import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.command.CmdTallyBySource;
+
+import java.util.Arrays;
+
+/**
+ * Sources whose tally status changed between two {@link TallyTable}s, e.g. source 3: PVW -> PGM.
+ * Sources gone from the topology change to {@link CmdTallyBySource#STATUS_NONE}.
+ */
+public final class TallyDelta {
+
+    public static final TallyDelta EMPTY = new TallyDelta(new int[0], new int[0], new int[0], 0);
+
+    private final int[] sources;
+    private final int[] oldStatuses;
+    private final int[] newStatuses;
+    private final int size;
+
+    /**
+     * Compares the tables, with a shared {@link SourceIndex} only the differing bits are visited.
+     */
+    public static TallyDelta between(@NotNull TallyTable previous, @NotNull TallyTable current) {
+        if (previous == null || current == null) {
+            throw new IllegalArgumentException("previous and current must be not null");
+        }
+
+        if (previous.index == current.index) {
+            return betweenSameIndex(previous, current);
+        }
+
+        int capacity = current.size() + previous.size();
+        int[] sources = new int[capacity];
+        int[] oldStatuses = new int[capacity];
+        int[] newStatuses = new int[capacity];
+        int size = 0;
+
+        for (int j = 0; j < current.size(); j++) {
+            int source = current.index.sourceAt(j);
+            int oldStatus = previous.getStatus(source);
+            int newStatus = current.getStatus(source);
+            if (oldStatus != newStatus) {
+                sources[size] = source;
+                oldStatuses[size] = oldStatus;
+                newStatuses[size] = newStatus;
+                size++;
+            }
+        }
+
+        for (int j = 0; j < previous.size(); j++) {
+            int source = previous.index.sourceAt(j);
+            int oldStatus = previous.getStatus(source);
+            if (!current.hasSource(source) && oldStatus != CmdTallyBySource.STATUS_NONE) {
+                sources[size] = source;
+                oldStatuses[size] = oldStatus;
+                newStatuses[size] = CmdTallyBySource.STATUS_NONE;
+                size++;
+            }
+        }
+
+        return size == 0 ? EMPTY : new TallyDelta(sources, oldStatuses, newStatuses, size);
+    }
+
+    private static TallyDelta betweenSameIndex(TallyTable previous, TallyTable current) {
+        int size = 0;
+        for (int w = 0; w < current.program.length; w++) {
+            size += Long.bitCount(changed(previous, current, w));
+        }
+
+        if (size == 0) {
+            return EMPTY;
+        }
+
+        int[] sources = new int[size];
+        int[] oldStatuses = new int[size];
+        int[] newStatuses = new int[size];
+        int k = 0;
+        for (int w = 0; w < current.program.length; w++) {
+            for (long word = changed(previous, current, w); word != 0; word &= word - 1) {
+                int j = w * 64 + Long.numberOfTrailingZeros(word);
+                sources[k] = current.index.sourceAt(j);
+                oldStatuses[k] = statusAt(previous, j);
+                newStatuses[k] = statusAt(current, j);
+                k++;
+            }
+        }
+
+        return new TallyDelta(sources, oldStatuses, newStatuses, size);
+    }
+
+    private static long changed(TallyTable previous, TallyTable current, int w) {
+        return (previous.program[w] ^ current.program[w]) | (previous.preview[w] ^ current.preview[w]);
+    }
+
+    private static int statusAt(TallyTable table, int j) {
+        return (table.isOnProgramAt(j) ? CmdTallyBySource.STATUS_PROGRAM : 0)
+                | (table.isOnPreviewAt(j) ? CmdTallyBySource.STATUS_PREVIEW : 0);
+    }
+
+    private TallyDelta(int[] sources, int[] oldStatuses, int[] newStatuses, int size) {
+        this.sources = sources;
+        this.oldStatuses = oldStatuses;
+        this.newStatuses = newStatuses;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int sourceAt(int j) {
+        return sources[j];
+    }
+
+    public int oldStatusAt(int j) {
+        return oldStatuses[j];
+    }
+
+    public int newStatusAt(int j) {
+        return newStatuses[j];
+    }
+
+    public int[] getSources() {
+        return Arrays.copyOf(sources, size);
+    }
+
+    /**
+     * @return status name, PGM, PVW, PGM+PVW or -
+     */
+    public static String stringifyStatus(int status) {
+        switch (status & (CmdTallyBySource.STATUS_PROGRAM | CmdTallyBySource.STATUS_PREVIEW)) {
+            case CmdTallyBySource.STATUS_PROGRAM:
+                return "PGM";
+            case CmdTallyBySource.STATUS_PREVIEW:
+                return "PVW";
+            case CmdTallyBySource.STATUS_PROGRAM | CmdTallyBySource.STATUS_PREVIEW:
+                return "PGM+PVW";
+            default:
+                return "-";
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(getClass().getSimpleName());
+        for (int j = 0; j < size; j++) {
+            sb.append(j == 0 ? " " : ", ")
+                    .append(sources[j]).append(": ")
+                    .append(stringifyStatus(oldStatuses[j])).append("->")
+                    .append(stringifyStatus(newStatuses[j]));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.tally;
+
+import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.command.CmdTallyBySource;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable tally of every source of a {@link SourceIndex}, program and preview are bitsets over
+ * the dense indexes. Lookups are O(1), bulk queries walk the set bits only.
+ */
+public final class TallyTable {
+
+    public static final TallyTable EMPTY = new TallyTable(SourceIndex.EMPTY, new long[0], new long[0]);
+
+    public final SourceIndex index;
+
+    final long[] program;
+    final long[] preview;
+
+    /**
+     * Creates the table of a tally, reuses the given index while the tally has the same sources.
+     *
+     * @param index index of the previous table, may be null
+     */
+    public static TallyTable create(SourceIndex index, @NotNull CmdTallyBySource tally) {
+        if (tally == null) {
+            throw new IllegalArgumentException("tally must be not null");
+        }
+
+        int length = tally.statuses.length;
+        int[] sources = new int[length];
+        for (int j = 0; j < length; j++) {
+            sources[j] = tally.statuses[j][0];
+        }
+
+        if (index == null || !index.matches(sources, length)) {
+            index = SourceIndex.of(sources);
+        }
+
+        long[] program = new long[words(length)];
+        long[] preview = new long[words(length)];
+        for (int j = 0; j < length; j++) {
+            int status = tally.statuses[j][1];
+            if ((status & CmdTallyBySource.STATUS_PROGRAM) != 0) {
+                program[j >>> 6] |= 1L << j;
+            }
+            if ((status & CmdTallyBySource.STATUS_PREVIEW) != 0) {
+                preview[j >>> 6] |= 1L << j;
+            }
+        }
+
+        return new TallyTable(index, program, preview);
+    }
+
+    private TallyTable(SourceIndex index, long[] program, long[] preview) {
+        this.index = index;
+        this.program = program;
+        this.preview = preview;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public boolean hasSource(int source) {
+        return index.contains(source);
+    }
+
+    public boolean isOnProgram(int source) {
+        return isSet(program, index.indexOf(source));
+    }
+
+    public boolean isOnPreview(int source) {
+        return isSet(preview, index.indexOf(source));
+    }
+
+    public boolean isOnProgramAt(int denseIndex) {
+        return isSet(program, denseIndex);
+    }
+
+    public boolean isOnPreviewAt(int denseIndex) {
+        return isSet(preview, denseIndex);
+    }
+
+    public int getStatus(int source) {
+        int j = index.indexOf(source);
+        return (isSet(program, j) ? CmdTallyBySource.STATUS_PROGRAM : 0)
+                | (isSet(preview, j) ? CmdTallyBySource.STATUS_PREVIEW : 0);
+    }
+
+    public int countOnProgram() {
+        return count(program);
+    }
+
+    public int countOnPreview() {
+        return count(preview);
+    }
+
+    /**
+     * @return sources on air
+     */
+    public int[] getProgramSources() {
+        return sources(program);
+    }
+
+    public int[] getPreviewSources() {
+        return sources(preview);
+    }
+
+    public void forEachOnProgram(@NotNull IntConsumer action) {
+        forEach(program, action);
+    }
+
+    public void forEachOnPreview(@NotNull IntConsumer action) {
+        forEach(preview, action);
+    }
+
+    private static boolean isSet(long[] bits, int j) {
+        return j >= 0 && j >>> 6 < bits.length && (bits[j >>> 6] & (1L << j)) != 0;
+    }
+
+    private static int count(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private int[] sources(long[] bits) {
+        int[] result = new int[count(bits)];
+        int k = 0;
+        for (int w = 0; w < bits.length; w++) {
+            for (long word = bits[w]; word != 0; word &= word - 1) {
+                result[k++] = index.sourceAt(w * 64 + Long.numberOfTrailingZeros(word));
+            }
+        }
+        return result;
+    }
+
+    private void forEach(long[] bits, IntConsumer action) {
+        for (int w = 0; w < bits.length; w++) {
+            for (long word = bits[w]; word != 0; word &= word - 1) {
+                action.accept(index.sourceAt(w * 64 + Long.numberOfTrailingZeros(word)));
+            }
+        }
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(getClass().getSimpleName());
+        for (int j = 0; j < size(); j++) {
+            sb.append(' ').append(index.sourceAt(j)).append('=')
+                    .append(isOnProgramAt(j) ? "PGM" : "")
+                    .append(isOnPreviewAt(j) ? "PVW" : "");
+        }
+        return sb.toString();
+    }
+}
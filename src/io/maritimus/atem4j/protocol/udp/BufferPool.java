@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.udp;
+
+import io.maritimus.atem4j.protocol.concurrent.BusySpinWaitStrategy;
+import io.maritimus.atem4j.protocol.concurrent.SpscRingBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of receive buffers for one receiving thread and one releasing thread.
+ *
+ * Buffers are allocated lazily up to {@link #maxBuffers} and recycled through a lock-free free list,
+ * so a datagram can be handed downstream in its buffer and decoded on another thread. With leak
+ * detection on, every lease remembers where it was taken, see {@link #reportLeaks(long)}.
+ */
+public class BufferPool {
+    private static final Logger log = LoggerFactory.getLogger(BufferPool.class);
+
+    public static final long LEAK_AGE_NANOS = TimeUnit.SECONDS.toNanos(1);   // in flight leases are younger
+
+    public final int maxBuffers;
+    public final int bufferSize;
+    public final boolean isDirect;
+    public final boolean detectLeaks;
+
+    private final SpscRingBuffer<PooledBuffer> free;
+    private final ConcurrentLinkedQueue<PooledBuffer> all = new ConcurrentLinkedQueue<>();
+
+    // written by the acquiring thread
+    private volatile int allocated = 0;
+    private volatile long acquired = 0;
+    private volatile long exhausted = 0;
+    private volatile long highWaterMark = 0;
+
+    // written by the releasing thread
+    private volatile long released = 0;
+
+    /**
+     * Creates a heap buffer pool, leaks are detected when debug logging is enabled.
+     */
+    public BufferPool(int maxBuffers, int bufferSize) {
+        this(maxBuffers, bufferSize, false);
+    }
+
+    public BufferPool(int maxBuffers, int bufferSize, boolean isDirect) {
+        this(maxBuffers, bufferSize, isDirect, log.isDebugEnabled());
+    }
+
+    public BufferPool(int maxBuffers, int bufferSize, boolean isDirect, boolean detectLeaks) {
+        if (maxBuffers <= 0) {
+            throw new IllegalArgumentException(String.format("maxBuffers = %d must be positive", maxBuffers));
+        }
+
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(String.format("bufferSize = %d must be positive", bufferSize));
+        }
+
+        this.maxBuffers = maxBuffers;
+        this.bufferSize = bufferSize;
+        this.isDirect = isDirect;
+        this.detectLeaks = detectLeaks;
+        int freeCapacity = maxBuffers == 1 ? 1 : Integer.highestOneBit(maxBuffers - 1) << 1;
+        this.free = new SpscRingBuffer<>(freeCapacity, new BusySpinWaitStrategy());
+    }
+
+    /**
+     * Leases a cleared buffer, acquiring thread only.
+     *
+     * @return null if all buffers are leased
+     */
+    public PooledBuffer acquire() {
+        PooledBuffer buffer = free.poll();
+        if (buffer == null) {
+            if (allocated >= maxBuffers) {
+                exhausted = exhausted + 1;
+                return null;
+            }
+
+            buffer = new PooledBuffer(
+                    this,
+                    isDirect ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize)
+            );
+            all.add(buffer);
+            allocated = allocated + 1;
+        }
+
+        buffer.lease();
+        if (detectLeaks) {
+            buffer.leasedAt = new Throwable("leased here");
+            buffer.leasedNanos = System.nanoTime();
+        }
+
+        acquired = acquired + 1;
+        long leased = acquired - released;
+        if (leased > highWaterMark) {
+            highWaterMark = leased;
+        }
+
+        return buffer;
+    }
+
+    void recycle(PooledBuffer buffer) {
+        released = released + 1;
+        if (!free.offer(buffer)) {
+            // can't happen, the free list holds all buffers
+            log.error("buffer pool free list is full");
+        }
+    }
+
+    /**
+     * Logs every buffer leased longer than the given time together with the place it was leased at.
+     * Works only with leak detection on.
+     *
+     * @return amount of such buffers
+     */
+    public int reportLeaks(long olderThanNanos) {
+        if (!detectLeaks) {
+            return 0;
+        }
+
+        long now = System.nanoTime();
+        int leaks = 0;
+        for (PooledBuffer buffer : all) {
+            Throwable leasedAt = buffer.leasedAt;
+            if (buffer.isLeased() && leasedAt != null && now - buffer.leasedNanos >= olderThanNanos) {
+                leaks++;
+                log.warn(String.format(
+                        "buffer is leased for %d ms and not released",
+                        (now - buffer.leasedNanos) / 1_000_000
+                ), leasedAt);
+            }
+        }
+        return leaks;
+    }
+
+    public int getAllocated() {
+        return allocated;
+    }
+
+    /**
+     * @return amount of buffers leased right now
+     */
+    public long getLeased() {
+        return acquired - released;
+    }
+
+    public long getAcquired() {
+        return acquired;
+    }
+
+    /**
+     * @return amount of acquire calls failed because all buffers were leased
+     */
+    public long getExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * @return max amount of buffers leased at the same time
+     */
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s allocated=%d leased=%d highWaterMark=%d exhausted=%d",
+                getClass().getSimpleName(),
+                allocated,
+                getLeased(),
+                highWaterMark,
+                exhausted
+        );
+    }
+}
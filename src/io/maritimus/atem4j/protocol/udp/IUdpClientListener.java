@@ -28,6 +28,24 @@ public interface IUdpClientListener {
 
     void onPacketReceived(Packet packet);
 
+    /**
+     * Called after a burst of received packets has been published to the in queue.
+     *
+     * @param packets amount of published packets
+     */
+    default void onBatchReceived(int packets) {
+    }
+
+    /**
+     * Called by the decoding thread when ack requesting packages are skipped, see
+     * {@link UdpClient#setSequenceWindow(io.maritimus.atem4j.protocol.InboundSequenceWindow)}.
+     *
+     * @param firstMissing first skipped package id
+     * @param count amount of skipped package ids
+     */
+    default void onSequenceGap(int firstMissing, int count) {
+    }
+
     void onPortUnreachableException(PortUnreachableException ex);
 
     void onClientClose();
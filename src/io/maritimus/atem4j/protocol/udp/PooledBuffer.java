@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.udp;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Receive buffer leased from a {@link BufferPool}. The holder of the lease must call
+ * {@link #release()} exactly once when the content is not needed anymore.
+ */
+public final class PooledBuffer {
+
+    public final ByteBuffer buffer;
+
+    private final BufferPool pool;
+    private final AtomicBoolean isLeased = new AtomicBoolean(false);
+
+    // set on lease when the pool detects leaks
+    volatile Throwable leasedAt = null;
+    volatile long leasedNanos = 0;
+
+    PooledBuffer(BufferPool pool, ByteBuffer buffer) {
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    public boolean isLeased() {
+        return isLeased.get();
+    }
+
+    /**
+     * Returns the buffer back to its pool, the buffer must not be touched afterwards.
+     */
+    public void release() {
+        if (!isLeased.compareAndSet(true, false)) {
+            throw new IllegalStateException("buffer is not leased, released twice?");
+        }
+        leasedAt = null;
+        pool.recycle(this);
+    }
+
+    void lease() {
+        isLeased.set(true);
+        buffer.clear();
+    }
+}
@@ -17,18 +17,31 @@
 package io.maritimus.atem4j.protocol.udp;
 
 import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.InboundSequenceWindow;
 import io.maritimus.atem4j.protocol.Packet;
+import io.maritimus.atem4j.protocol.PacketHeader;
 import io.maritimus.atem4j.protocol.ParseException;
 import io.maritimus.atem4j.protocol.Utils;
+import io.maritimus.atem4j.protocol.command.CommandReader;
+import io.maritimus.atem4j.protocol.concurrent.IWaitStrategy;
+import io.maritimus.atem4j.protocol.concurrent.Log2Histogram;
+import io.maritimus.atem4j.protocol.concurrent.SpscRingBuffer;
+import io.maritimus.atem4j.protocol.concurrent.StageMetrics;
+import io.maritimus.atem4j.protocol.concurrent.VirtualThreads;
+import io.maritimus.atem4j.protocol.concurrent.WaitStrategyType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.Random;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Created by Oleg Akimov on 30/07/15.
@@ -39,26 +52,56 @@ public class UdpClient implements AutoCloseable {
     public static final int DEFAULT_ATEM_PORT = 9910;
 
     public static final int MAX_SEND_BUF = 4096;
-    public static final int MAX_RECEIVE_BUF = 4096;
+    public static final int MAX_RECEIVE_BUF = PacketHeader.MASK_SIZE + 1;   // packet size is 11 bits
     public static final int SO_RECEIVE_BUF = 64000;     // socket option
+    public static final int IN_QUEUE_CAPACITY = 1024;   // packets
+    public static final int MAX_BATCH = 256;            // datagrams drained per wakeup before publishing
+    public static final int POOL_BUFFERS = IN_QUEUE_CAPACITY + MAX_BATCH;   // allocated lazily
     public static final int SEND_TIMEOUT = 1;           // timeout between send ops in non-blocking mode
-    public static final int RECEIVE_TIMEOUT = 1;
 
     public final InetSocketAddress atemAddress;
     public final int localPort;
     public final DatagramChannel channel;
     public final DatagramSocket socket;
 
-    public final byte[] inBuf = new byte[MAX_RECEIVE_BUF];
-    public final ByteBuffer inBB = ByteBuffer.wrap(inBuf);
     public final ByteBuffer outBB = ByteBuffer.allocateDirect(MAX_SEND_BUF);
 
-    public final ConcurrentLinkedQueue<Packet> inQueue = new ConcurrentLinkedQueue<>();
+    /** receive buffers, leased by the receiving thread and released by the consumer after decoding */
+    public final BufferPool pool;
+
+    /** received datagrams, not decoded yet, see {@link #poll()} */
+    public final SpscRingBuffer<PooledBuffer> inQueue;
+
+    /** amount of packets published to {@link #inQueue} at once */
+    public final Log2Histogram batchSizes = new Log2Histogram();
+
+    /** receiving of bursts, the depth is the amount of datagrams found in the socket */
+    public final StageMetrics receiveMetrics = new StageMetrics("receive");
+
+    public final WaitStrategyType receiveWaitStrategy;
 
     public final IUdpClientListener listener;
 
     public volatile boolean isStopped = false;
 
+    private final UdpMultiplexer multiplexer;   // null when the client owns its channel
+    private volatile UdpReactor reactor = null;
+    private volatile Selector selector = null;
+
+    // not a monitor, a virtual thread blocked in send must not pin its carrier
+    private final ReentrantLock sendLock = new ReentrantLock();
+
+    // session identification for the multiplexer, see UdpMultiplexer#find
+    volatile int helloUid = UdpMultiplexer.UID_NONE;
+    volatile int sessionUid = UdpMultiplexer.UID_NONE;
+
+    private int batch = 0;      // staged datagrams, receiving thread only
+    private final ByteBuffer discardBB = ByteBuffer.allocate(1);  // reads datagrams when the pool is exhausted
+    private volatile long dropped = 0;
+    private volatile CommandReader commandReader = CommandReader.DEFAULT;
+    private volatile InboundSequenceWindow sequenceWindow = null;
+    private PooledBuffer viewed = null;     // backs the views of the last polled packet, consumer thread only
+
 
     public static UdpClient create(InetSocketAddress atemAddress,
                                    IUdpClientListener listener) throws java.io.IOException {
@@ -81,6 +124,40 @@ public class UdpClient implements AutoCloseable {
                                    int localPortMin,
                                    int localPortMax,
                                    IUdpClientListener listener) throws java.io.IOException {
+        return create(
+                atemAddresss,
+                localPortMin,
+                localPortMax,
+                listener,
+                WaitStrategyType.BLOCKING,
+                WaitStrategyType.BLOCKING
+        );
+    }
+
+    public static UdpClient create(InetSocketAddress atemAddresss,
+                                   int localPortMin,
+                                   int localPortMax,
+                                   IUdpClientListener listener,
+                                   WaitStrategyType queueWaitStrategy,
+                                   WaitStrategyType receiveWaitStrategy) throws java.io.IOException {
+        return create(
+                atemAddresss,
+                localPortMin,
+                localPortMax,
+                listener,
+                queueWaitStrategy,
+                receiveWaitStrategy,
+                new BufferPool(POOL_BUFFERS, MAX_RECEIVE_BUF)
+        );
+    }
+
+    public static UdpClient create(InetSocketAddress atemAddresss,
+                                   int localPortMin,
+                                   int localPortMax,
+                                   IUdpClientListener listener,
+                                   WaitStrategyType queueWaitStrategy,
+                                   WaitStrategyType receiveWaitStrategy,
+                                   BufferPool pool) throws java.io.IOException {
         if (localPortMax < localPortMin) {
             throw new IllegalArgumentException(String.format(
                     "localPortMin = %d must be lesser or equal to localPortMax = %d",
@@ -90,7 +167,7 @@ public class UdpClient implements AutoCloseable {
         }
 
         int localPort = localPortMax == localPortMin ? localPortMin : Utils.random(localPortMin, localPortMax);
-        return new UdpClient(atemAddresss, localPort, listener);
+        return new UdpClient(atemAddresss, localPort, listener, queueWaitStrategy, receiveWaitStrategy, pool);
     }
 
     public static InetSocketAddress createAtemAddress(@NotNull String atemHost) {
@@ -110,6 +187,36 @@ public class UdpClient implements AutoCloseable {
     }
 
     public UdpClient(@NotNull InetSocketAddress atemAddress, int localPort, @NotNull IUdpClientListener listener) throws java.io.IOException {
+        this(atemAddress, localPort, listener, WaitStrategyType.BLOCKING, WaitStrategyType.BLOCKING);
+    }
+
+    public UdpClient(@NotNull InetSocketAddress atemAddress,
+                     int localPort,
+                     @NotNull IUdpClientListener listener,
+                     @NotNull WaitStrategyType queueWaitStrategy,
+                     @NotNull WaitStrategyType receiveWaitStrategy) throws java.io.IOException {
+        this(
+                atemAddress,
+                localPort,
+                listener,
+                queueWaitStrategy,
+                receiveWaitStrategy,
+                new BufferPool(POOL_BUFFERS, MAX_RECEIVE_BUF)
+        );
+    }
+
+    /**
+     * @param queueWaitStrategy how the consumer of {@link #inQueue} waits for packets
+     * @param receiveWaitStrategy how {@link #loop()} waits for datagrams, BLOCKING parks in a selector,
+     *                            the others poll the non-blocking channel
+     * @param pool receive buffers, exclusively for this client
+     */
+    public UdpClient(@NotNull InetSocketAddress atemAddress,
+                     int localPort,
+                     @NotNull IUdpClientListener listener,
+                     @NotNull WaitStrategyType queueWaitStrategy,
+                     @NotNull WaitStrategyType receiveWaitStrategy,
+                     @NotNull BufferPool pool) throws java.io.IOException {
 
         if (atemAddress == null) {
             throw new IllegalArgumentException("atemAddress must be not null");
@@ -123,8 +230,20 @@ public class UdpClient implements AutoCloseable {
             throw new IllegalArgumentException("listener must be not null");
         }
 
+        if (queueWaitStrategy == null || receiveWaitStrategy == null) {
+            throw new IllegalArgumentException("wait strategies must be not null");
+        }
+
+        if (pool == null) {
+            throw new IllegalArgumentException("pool must be not null");
+        }
+
         this.atemAddress = atemAddress;
         this.listener = listener;
+        this.inQueue = new SpscRingBuffer<>(IN_QUEUE_CAPACITY, queueWaitStrategy.create());
+        this.receiveWaitStrategy = receiveWaitStrategy;
+        this.pool = pool;
+        this.multiplexer = null;
 
         SocketAddress localAddress = new InetSocketAddress(localPort);
 
@@ -147,11 +266,57 @@ public class UdpClient implements AutoCloseable {
         this.localPort = socket.getLocalPort();
     }
 
+    /**
+     * Session on the shared channel of the multiplexer, datagrams are received by the multiplexer thread.
+     */
+    UdpClient(@NotNull InetSocketAddress atemAddress,
+              @NotNull UdpMultiplexer multiplexer,
+              @NotNull IUdpClientListener listener,
+              @NotNull WaitStrategyType queueWaitStrategy) {
+
+        if (atemAddress == null) {
+            throw new IllegalArgumentException("atemAddress must be not null");
+        }
+
+        if (listener == null) {
+            throw new IllegalArgumentException("listener must be not null");
+        }
+
+        if (queueWaitStrategy == null) {
+            throw new IllegalArgumentException("queueWaitStrategy must be not null");
+        }
+
+        this.atemAddress = atemAddress;
+        this.listener = listener;
+        this.inQueue = new SpscRingBuffer<>(IN_QUEUE_CAPACITY, queueWaitStrategy.create());
+        this.receiveWaitStrategy = WaitStrategyType.BLOCKING;
+        this.pool = new BufferPool(POOL_BUFFERS, MAX_RECEIVE_BUF);
+        this.multiplexer = multiplexer;
+
+        channel = multiplexer.channel;
+        socket = channel.socket();
+        localPort = multiplexer.localPort;
+    }
+
+    /**
+     * @return true if the channel is shared by the sessions of a {@link UdpMultiplexer}
+     */
+    public boolean isShared() {
+        return multiplexer != null;
+    }
+
     public void stop() {
-        inQueue.clear();
         listener.onClientStop();
         isStopped = true;
-        if (channel.isOpen()) {
+
+        Selector loopSelector = selector;
+        if (loopSelector != null) {
+            loopSelector.wakeup();
+        }
+
+        if (multiplexer != null) {
+            multiplexer.unregister(this);
+        } else if (channel.isOpen()) {
             try {
                 channel.close();
             } catch (IOException e) {
@@ -160,72 +325,382 @@ public class UdpClient implements AutoCloseable {
         }
     }
 
+    /**
+     * Receives datagrams on the calling thread until the client is stopped. With the BLOCKING
+     * receive strategy the thread is parked in its own selector while the channel has nothing to read,
+     * {@link #stop()} or an interrupt wakes it up. On a virtual thread the channel is switched to
+     * blocking reads instead, since a selector would pin the carrier thread. Other strategies poll the channel.
+     */
     public void loop() {
-        int num = 0;
-        int bytesRead;
+        if (reactor != null) {
+            throw new IllegalStateException("udp client is registered in reactor, loop must not be called");
+        }
+
+        if (multiplexer != null) {
+            throw new IllegalStateException("udp client is served by multiplexer, loop must not be called");
+        }
+
+        if (receiveWaitStrategy != WaitStrategyType.BLOCKING) {
+            loopPolling();
+        } else if (VirtualThreads.isVirtual(Thread.currentThread())) {
+            loopBlocking();
+        } else {
+            loopSelecting();
+        }
+    }
+
+    private void loopBlocking() {
+        try {
+            channel.configureBlocking(true);
+        } catch (ClosedChannelException ex) {
+            log.debug("udp client channel is closed");
+            return;
+        } catch (IOException ex) {
+            log.error("Can't switch udp client channel to blocking mode", ex);
+            stop();
+            return;
+        }
+
+        while(true) {
+            if (isStopped) {
+                log.debug("udp client is stopped");
+                break;
+            }
+
+            // a read blocked by a virtual thread releases its carrier, stop() closes the channel to wake it up,
+            // a blocking channel can't be drained without blocking, so every datagram is published alone
+            receive();
+
+            if (Thread.interrupted() || !channel.isOpen()) {
+                stop();
+                break;
+            }
+        }
+    }
+
+    private void loopSelecting() {
+        try (Selector selector = Selector.open()) {
+            channel.register(selector, SelectionKey.OP_READ);
+            this.selector = selector;
+
+            while(true) {
+                if (isStopped) {
+                    log.debug("udp client is stopped");
+                    break;
+                }
+
+                selector.select();
+                selector.selectedKeys().clear();
+
+                if (Thread.interrupted()) {
+                    stop();
+                    break;
+                }
+
+                while (receiveBatch() == MAX_BATCH) {
+                    // drain everything what is already received
+                }
+            }
+        } catch (ClosedChannelException ex) {
+            log.debug("udp client channel is closed");
+        } catch (IOException ex) {
+            log.error("udp client selector is failed", ex);
+            stop();
+        } finally {
+            selector = null;
+        }
+    }
+
+    private void loopPolling() {
+        IWaitStrategy idleStrategy = receiveWaitStrategy.create();
+        int idleCount = 0;
+
         while(true) {
             if (isStopped) {
                 log.debug("udp client is stopped");
                 break;
             }
 
-            bytesRead = 0;
+            if (receiveBatch() > 0) {
+                idleCount = 0;
+                continue;
+            }
+
             try {
-                inBB.clear();
-                bytesRead = channel.read(inBB);
-                // inBB.position === bytesRead
-            } catch (PortUnreachableException ex) {
-                listener.onPortUnreachableException(ex);
-            } catch (Exception ex) {
-                log.error("Error reading from server", ex);
-            } finally {
-                if (bytesRead > 0) {
-                    inBB.flip();
-                } else {
-                    inBB.clear();
-                    inBB.limit(0);
+                idleStrategy.idle(idleCount);
+                if (idleCount < Integer.MAX_VALUE) {
+                    idleCount++;
                 }
+            } catch (InterruptedException ex) {
+                stop();
+                break;
             }
+        }
+    }
 
-            if (inBB.hasRemaining()) {
-                num = num + 1;
-                try {
-                    Packet packet = Packet.read(inBB);
-                    synchronized (inQueue) {
-                        inQueue.add(packet);
-                        inQueue.notifyAll();
-                    }
+    /**
+     * Reads and publishes a single datagram from the channel.
+     *
+     * @return true if a datagram was read, false if the channel had nothing to read
+     */
+    public boolean receive() {
+        boolean isReceived = read();
+        flush();
+        return isReceived;
+    }
+
+    /**
+     * Reads every datagram already received by the channel, up to {@link #MAX_BATCH}, and publishes
+     * them to {@link #inQueue} at once, so the consumer is woken up once per burst.
+     *
+     * @return amount of read datagrams
+     */
+    public int receiveBatch() {
+        long start = System.nanoTime();
+        int count = 0;
+        while (count < MAX_BATCH && read()) {
+            count++;
+        }
+        flush();
+
+        if (count > 0) {
+            receiveMetrics.record(count, System.nanoTime() - start, count);
+        }
+        return count;
+    }
+
+    private boolean read() {
+        PooledBuffer pooled = pool.acquire();
+        ByteBuffer buf = pooled == null ? discardBB : pooled.buffer;
+
+        int bytesRead = 0;
+        try {
+            buf.clear();
+            bytesRead = channel.read(buf);
+        } catch (PortUnreachableException ex) {
+            listener.onPortUnreachableException(ex);
+        } catch (AsynchronousCloseException ex) {
+            log.debug("udp client channel is closed while reading");
+        } catch (Exception ex) {
+            if (!isStopped) {
+                log.error("Error reading from server", ex);
+            }
+        }
+
+        if (bytesRead <= 0) {
+            if (pooled != null) {
+                pooled.release();
+            }
+            return false;
+        }
+
+        if (pooled == null) {
+            dropped = dropped + 1;
+            log.warn("receive buffers are exhausted, dropping datagram");
+            return true;
+        }
+
+        buf.flip();
+        stage(pooled);
+        return true;
+    }
+
+    /**
+     * Stages a received datagram for the consumer of {@link #inQueue},
+     * it becomes visible by {@link #flush()}. Takes over the lease of the buffer.
+     */
+    void stage(PooledBuffer pooled) {
+        if (inQueue.stage(pooled)) {
+            batch++;
+        } else {
+            dropped = dropped + 1;
+            pooled.release();
+            log.warn("in queue is full, dropping datagram");
+        }
+    }
+
+    /**
+     * Copies a datagram received by somebody else into a pooled buffer and stages it.
+     */
+    void stageCopy(ByteBuffer datagram) {
+        PooledBuffer pooled = pool.acquire();
+        if (pooled == null) {
+            dropped = dropped + 1;
+            log.warn("receive buffers are exhausted, dropping datagram");
+            return;
+        }
+
+        pooled.buffer.put(datagram);
+        pooled.buffer.flip();
+        stage(pooled);
+    }
+
+    /**
+     * Decodes the next received datagram and releases its buffer, consumer thread only.
+     * Datagrams failed to parse are reported to the listener and skipped.
+     *
+     * With {@link CommandReader#views} the buffer is kept until the next call, so the views
+     * of the returned packet are valid until then.
+     *
+     * @return next packet or null if there is nothing received
+     */
+    public Packet poll() {
+        releaseViewed();
+
+        CommandReader reader = commandReader;
+        InboundSequenceWindow window = sequenceWindow;
+        PooledBuffer pooled;
+        while ((pooled = inQueue.poll()) != null) {
+            boolean isKept = false;
+            try {
+                int sequence = window != null ? window.accept(pooled.buffer) : InboundSequenceWindow.ACCEPTED;
+                if (sequence == InboundSequenceWindow.DUPLICATE) {
+                    // only to be acknowledged again, the commands are applied already
+                    Packet packet = new Packet(PacketHeader.read(pooled.buffer));
                     listener.onPacketReceived(packet);
-                    /*
-                    log.debug(String.format(
-                            "UDP packet #%d received from server: %s",
-                            num,
-                            packet
-                    ));
-                    */
-                } catch (ParseException ex) {
-                    listener.onParseException(ex);
+                    return packet;
+                }
+
+                Packet packet = Packet.read(pooled.buffer, reader);
+                if (sequence == InboundSequenceWindow.GAP) {
+                    listener.onSequenceGap(window.getGapStart(), window.getGapLength());
                 }
-            } else {
-                try {
-                    Thread.sleep(RECEIVE_TIMEOUT);
-                } catch (InterruptedException ex) {
-                    if (Thread.interrupted()) {
-                        stop();
-                        break;
-                    }
+                listener.onPacketReceived(packet);
+                if (reader.views != null) {
+                    viewed = pooled;
+                    isKept = true;
+                }
+                return packet;
+            } catch (ParseException ex) {
+                listener.onParseException(ex);
+            } finally {
+                if (!isKept) {
+                    pooled.release();
                 }
             }
+        }
+        return null;
+    }
+
+    private void releaseViewed() {
+        if (viewed != null) {
+            viewed.release();
+            viewed = null;
+        }
+    }
+
+    /**
+     * Releases every received and not decoded datagram, consumer thread only.
+     */
+    public void discardReceived() {
+        releaseViewed();
 
+        PooledBuffer pooled;
+        while ((pooled = inQueue.poll()) != null) {
+            pooled.release();
         }
     }
 
-    synchronized
+    /**
+     * @return amount of datagrams dropped because the in queue or the buffer pool was full
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    public CommandReader getCommandReader() {
+        return commandReader;
+    }
+
+    /**
+     * Decodes received packets by the reader, commands it skips are not in {@link Packet#commands}.
+     */
+    public void setCommandReader(@NotNull CommandReader commandReader) {
+        if (commandReader == null) {
+            throw new IllegalArgumentException("commandReader must be not null");
+        }
+
+        this.commandReader = commandReader;
+    }
+
+    public InboundSequenceWindow getSequenceWindow() {
+        return sequenceWindow;
+    }
+
+    /**
+     * Tracks package ids of received datagrams, duplicates are returned by {@link #poll()} without
+     * commands and gaps are reported by {@link IUdpClientListener#onSequenceGap(int, int)}.
+     * Null disables tracking.
+     */
+    public void setSequenceWindow(InboundSequenceWindow sequenceWindow) {
+        this.sequenceWindow = sequenceWindow;
+    }
+
+    /**
+     * Publishes the staged datagrams with a single wake-up of the consumer.
+     */
+    int flush() {
+        int count = batch;
+        if (count == 0) {
+            return 0;
+        }
+
+        batch = 0;
+        inQueue.flush();
+        batchSizes.record(count);
+        listener.onBatchReceived(count);
+        return count;
+    }
+
+    void setReactor(UdpReactor reactor) {
+        this.reactor = reactor;
+    }
+
     public int send(@NotNull Packet p) throws IOException {
         if (p == null) {
             throw new IllegalArgumentException("packet p can't be null");
         }
 
+        sendLock.lock();
+        try {
+            return sendLocked(p);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Sends an encoded datagram as is, from its position to its limit.
+     */
+    public int send(@NotNull ByteBuffer datagram) throws IOException {
+        if (datagram == null) {
+            throw new IllegalArgumentException("datagram can't be null");
+        }
+
+        if (datagram.remaining() < PacketHeader.HEADER_LENGTH) {
+            throw new IllegalArgumentException(String.format(
+                    "datagram remaining = %d is to short for header",
+                    datagram.remaining()
+            ));
+        }
+
+        sendLock.lock();
+        try {
+            int position = datagram.position();
+            if ((datagram.get(position) & PacketHeader.FLAG_HELLO) != 0) {
+                onHello(datagram.getChar(position + 2));
+            }
+            return sendBuffer(datagram);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    private int sendLocked(Packet p) throws IOException {
+        if (p.header.isHello()) {
+            onHello(p.header.uid);
+        }
+
         outBB.clear();
         p.write(outBB);
         outBB.flip();
@@ -234,10 +709,22 @@ public class UdpClient implements AutoCloseable {
             throw new IllegalArgumentException(String.format("packet don't have data: ", p));
         }
 
-        int remaining = outBB.remaining();
+        return sendBuffer(outBB);
+    }
+
+    private void onHello(int uid) {
+        if (multiplexer != null) {
+            // a new session, the multiplexer learns its uid from the answers
+            sessionUid = UdpMultiplexer.UID_NONE;
+            helloUid = uid;
+        }
+    }
+
+    private int sendBuffer(ByteBuffer buf) throws IOException {
+        int remaining = buf.remaining();
         int bytesSent = 0;
 
-        while(!isStopped && (bytesSent = channel.send(outBB, atemAddress)) == 0) {
+        while(!isStopped && (bytesSent = channel.send(buf, atemAddress)) == 0) {
             try {
                 Thread.sleep(SEND_TIMEOUT);
             } catch (InterruptedException ex) {
@@ -259,7 +746,7 @@ public class UdpClient implements AutoCloseable {
     public void close() throws Exception {
         stop();
         listener.onClientClose();// TODO: move after channel close
-        if (channel != null) {
+        if (channel != null && multiplexer == null) {
             if (channel.isOpen()) {
                 channel.close();
             }
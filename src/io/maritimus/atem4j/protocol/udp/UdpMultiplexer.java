@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.udp;
+
+import com.sun.istack.internal.NotNull;
+import io.maritimus.atem4j.protocol.PacketHeader;
+import io.maritimus.atem4j.protocol.concurrent.StageMetrics;
+import io.maritimus.atem4j.protocol.concurrent.WaitStrategyType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One unconnected channel on a single local port shared by the sessions to many switchers.
+ *
+ * Datagrams are received by one thread and demultiplexed to sessions by the source address and
+ * the header uid, so the amount of sockets, kernel buffers and firewall rules doesn't grow with
+ * the fleet. A session is known by the uid of its hello until the switcher answers the hello,
+ * the first other uid from that switcher after the answer becomes the session uid.
+ *
+ * Every datagram already received by the channel is drained in one wakeup, the packets of each
+ * session are published to its in queue at once after the burst.
+ */
+public class UdpMultiplexer implements Runnable, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(UdpMultiplexer.class);
+
+    public static final int SO_RECEIVE_BUF = 1 << 20;   // socket option, one buffer for all sessions
+
+    static final int UID_NONE = -1;         // hello is not answered yet
+    static final int UID_AWAITING = -2;     // hello is answered, session uid comes with the next packet
+
+    public final DatagramChannel channel;
+    public final int localPort;
+
+    /** receiving of bursts, the depth is the amount of datagrams found in the socket */
+    public final StageMetrics receiveMetrics = new StageMetrics("receive");
+
+    private final ByteBuffer inBB = ByteBuffer.allocate(UdpClient.MAX_RECEIVE_BUF);
+    private final ConcurrentHashMap<SocketAddress, List<UdpClient>> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Set<UdpClient> staged = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Selector selector;
+    private final Thread thread;
+
+    private volatile boolean isStopped = false;
+
+    public static UdpMultiplexer create(int localPort) throws IOException {
+        UdpMultiplexer multiplexer = new UdpMultiplexer(localPort);
+        multiplexer.start();
+        return multiplexer;
+    }
+
+    public UdpMultiplexer(int localPort) throws IOException {
+        if (localPort < 0 || localPort > 65535) {
+            throw new IllegalArgumentException(String.format("localPort = %d must be in [0,65535]", localPort));
+        }
+
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.bind(new InetSocketAddress(localPort));
+
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+
+        if (channel.getOption(StandardSocketOptions.SO_RCVBUF) < SO_RECEIVE_BUF) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, SO_RECEIVE_BUF);
+        }
+
+        this.localPort = channel.socket().getLocalPort();
+
+        log.debug(String.format(
+                "multiplexing on port %d with buf %d",
+                this.localPort,
+                channel.getOption(StandardSocketOptions.SO_RCVBUF)
+        ));
+
+        thread = new Thread(this, String.format("atem-udp-mux-%d", this.localPort));
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Opens a session to the switcher on the shared channel. The session is served by the
+     * multiplexer thread, its {@link UdpClient#stop()} leaves the channel open.
+     */
+    public UdpClient open(@NotNull InetSocketAddress atemAddress, @NotNull IUdpClientListener listener) {
+        return open(atemAddress, listener, WaitStrategyType.BLOCKING);
+    }
+
+    public UdpClient open(@NotNull InetSocketAddress atemAddress,
+                          @NotNull IUdpClientListener listener,
+                          @NotNull WaitStrategyType queueWaitStrategy) {
+        if (atemAddress == null) {
+            throw new IllegalArgumentException("atemAddress must be not null");
+        }
+
+        if (atemAddress.isUnresolved()) {
+            throw new IllegalArgumentException(String.format("atemAddress = %s must be resolved", atemAddress));
+        }
+
+        UdpClient client = new UdpClient(atemAddress, this, listener, queueWaitStrategy);
+        sessions.computeIfAbsent(atemAddress, address -> new CopyOnWriteArrayList<>()).add(client);
+        return client;
+    }
+
+    void unregister(UdpClient client) {
+        sessions.computeIfPresent(client.atemAddress, (address, list) -> {
+            list.remove(client);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    public int getSessions() {
+        int count = 0;
+        for (List<UdpClient> list : sessions.values()) {
+            count += list.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return amount of datagrams from unknown switchers or sessions
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!isStopped) {
+                selector.select();
+                selector.selectedKeys().clear();
+
+                long start = System.nanoTime();
+                int count = 0;
+                while (count < UdpClient.MAX_BATCH && receive()) {
+                    count++;
+                }
+
+                for (UdpClient client : staged) {
+                    client.flush();
+                }
+                staged.clear();
+
+                if (count > 0) {
+                    receiveMetrics.record(count, System.nanoTime() - start, count);
+                }
+            }
+        } catch (ClosedChannelException | ClosedSelectorException ex) {
+            log.debug("shared channel is closed");
+        } catch (IOException ex) {
+            if (!isStopped) {
+                log.error("udp multiplexer is failed", ex);
+            }
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException ex) {
+                log.error("Can't close selector", ex);
+            }
+        }
+
+        log.debug("udp multiplexer is done");
+    }
+
+    /**
+     * Reads a datagram and stages it for its session.
+     *
+     * @return false if the channel had nothing to read
+     */
+    private boolean receive() throws IOException {
+        inBB.clear();
+        SocketAddress from = channel.receive(inBB);
+        if (from == null) {
+            return false;
+        }
+        inBB.flip();
+
+        if (inBB.remaining() < PacketHeader.HEADER_LENGTH) {
+            dropped.incrementAndGet();
+            return true;
+        }
+
+        boolean isHello = ((inBB.get(0) & 0xFF) & PacketHeader.FLAG_HELLO) != 0;
+        int uid = inBB.getChar(2);
+
+        UdpClient client = find(from, uid, isHello);
+        if (client == null) {
+            dropped.incrementAndGet();
+            if (log.isTraceEnabled()) {
+                log.trace(String.format("no session for uid %d from %s", uid, from));
+            }
+            return true;
+        }
+
+        client.stageCopy(inBB);
+        staged.add(client);
+        return true;
+    }
+
+    private UdpClient find(SocketAddress from, int uid, boolean isHello) {
+        List<UdpClient> list = sessions.get(from);
+        if (list == null) {
+            return null;
+        }
+
+        for (UdpClient client : list) {
+            if (client.sessionUid == uid) {
+                return client;
+            }
+        }
+
+        for (UdpClient client : list) {
+            if (client.helloUid == uid) {
+                if (isHello && client.sessionUid == UID_NONE) {
+                    client.sessionUid = UID_AWAITING;
+                }
+                return client;
+            }
+        }
+
+        for (UdpClient client : list) {
+            if (client.sessionUid == UID_AWAITING) {
+                client.sessionUid = uid;
+                return client;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void close() {
+        isStopped = true;
+        selector.wakeup();
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            log.error("Can't close shared channel", ex);
+        }
+    }
+}
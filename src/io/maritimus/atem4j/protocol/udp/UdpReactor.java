@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.udp;
+
+import com.sun.istack.internal.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selector based event loops shared by many {@link UdpClient}s.
+ *
+ * Every registered client is served by one of a fixed number of loop threads which sleep in
+ * {@link Selector#select()} until one of their channels has a datagram to read, so the amount of
+ * threads doesn't grow with the amount of switchers.
+ */
+public class UdpReactor implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(UdpReactor.class);
+
+    public static final int DEFAULT_THREADS = 1;
+
+    private final EventLoop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public static UdpReactor create() throws IOException {
+        return create(DEFAULT_THREADS);
+    }
+
+    public static UdpReactor create(int threads) throws IOException {
+        UdpReactor reactor = new UdpReactor(threads);
+        reactor.start();
+        return reactor;
+    }
+
+    public UdpReactor(int threads) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException(String.format("threads = %d must be positive", threads));
+        }
+
+        loops = new EventLoop[threads];
+        for (int j = 0; j < threads; j++) {
+            loops[j] = new EventLoop(j);
+        }
+    }
+
+    public void start() {
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    public int getThreads() {
+        return loops.length;
+    }
+
+    /**
+     * Hands the client over to one of the event loops. The client's own {@link UdpClient#loop()}
+     * must not be used after registration.
+     */
+    public void register(@NotNull UdpClient client) {
+        if (client == null) {
+            throw new IllegalArgumentException("client must be not null");
+        }
+
+        client.setReactor(this);
+        loops[Math.abs(next.getAndIncrement() % loops.length)].register(client);
+    }
+
+    @Override
+    public void close() {
+        for (EventLoop loop : loops) {
+            loop.close();
+        }
+    }
+
+    static class EventLoop implements Runnable {
+
+        final Selector selector;
+        final Thread thread;
+        final ConcurrentLinkedQueue<UdpClient> pending = new ConcurrentLinkedQueue<>();
+
+        volatile boolean isStopped = false;
+
+        EventLoop(int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, String.format("atem-udp-reactor-%d", index));
+            thread.setDaemon(true);
+        }
+
+        void register(UdpClient client) {
+            pending.add(client);
+            selector.wakeup();
+        }
+
+        void close() {
+            isStopped = true;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isStopped) {
+                    selector.select();
+                    registerPending();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        UdpClient client = (UdpClient) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                client.receiveBatch();
+                            }
+                        } catch (CancelledKeyException ex) {
+                            log.trace("key is cancelled, client is closed");
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException ex) {
+                log.error("udp reactor is failed", ex);
+            } finally {
+                try {
+                    selector.close();
+                } catch (IOException ex) {
+                    log.error("Can't close selector", ex);
+                }
+            }
+
+            log.debug("udp reactor loop is done");
+        }
+
+        private void registerPending() {
+            UdpClient client;
+            while ((client = pending.poll()) != null) {
+                try {
+                    client.channel.register(selector, SelectionKey.OP_READ, client);
+                } catch (ClosedChannelException ex) {
+                    log.debug("udp client is closed before registration");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public class AckSchedulerTest {
+
+    @Test
+    public void testBurstIsAcknowledgedOnce() throws Exception {
+        List<Integer> sent = new ArrayList<>();
+        AckScheduler acks = new AckScheduler(sent::add);
+
+        for (int id = 1; id <= 10; id++) {
+            acks.offer(id, 0);
+        }
+        assertTrue(sent.isEmpty(), "nothing is sent within the window");
+
+        acks.flush();
+        assertEquals(sent, Arrays.asList(10));
+        assertEquals(acks.getRequested(), 10);
+        assertEquals(acks.getSent(), 1);
+        assertEquals(acks.getSaved(), 9);
+    }
+
+    @Test
+    public void testGapAndWrapAround() throws Exception {
+        List<Integer> sent = new ArrayList<>();
+        AckScheduler acks = new AckScheduler(sent::add);
+
+        acks.offer(0x7FFE, 0);
+        acks.offer(0x7FFF, 0);
+        acks.offer(0, 0);
+        acks.offer(0x7FFF, 0);      // resent, covered
+        acks.offer(5, 0);           // gap, 1..4 are missing
+        acks.flush();
+        assertEquals(sent, Arrays.asList(0), "the ack stays before the gap");
+
+        acks.offer(1, 0);
+        acks.offer(2, 0);
+        acks.flush();
+        assertEquals(sent, Arrays.asList(0, 2), "partly filled");
+
+        acks.offer(3, 0);
+        acks.offer(4, 0);
+        acks.flush();
+        assertEquals(sent, Arrays.asList(0, 2, 5), "filled up to the package after the gap");
+    }
+
+    @Test
+    public void testResentPackageIsAcknowledgedAgain() throws Exception {
+        List<Integer> sent = new ArrayList<>();
+        AckScheduler acks = new AckScheduler(sent::add);
+
+        acks.offer(1, 0);
+        acks.offer(2, 0);
+        acks.flush();
+        acks.offer(1, 0);           // the ack has been lost
+        acks.flush();
+        assertEquals(sent, Arrays.asList(2, 2));
+    }
+
+    @Test
+    public void testWindowExpires() throws Exception {
+        List<Integer> sent = new ArrayList<>();
+        AckScheduler acks = new AckScheduler(sent::add);
+        acks.setWindowNanos(100);
+
+        acks.offer(1, 1000);
+        acks.offer(2, 1050);
+        acks.offer(3, 1100);
+        assertEquals(sent, Arrays.asList(3));
+        assertFalse(acks.hasPending());
+
+        acks.setWindowNanos(0);
+        acks.offer(4, 2000);
+        assertEquals(sent, Arrays.asList(3, 4));
+
+        acks.setWindowNanos(100);
+        acks.offer(5, 3000);
+        acks.discard();
+        acks.flush();
+        assertEquals(sent, Arrays.asList(3, 4));
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import io.maritimus.atem4j.protocol.command.CmdProgramInput;
+import io.maritimus.atem4j.protocol.command.CmdSetPreviewInput;
+import io.maritimus.atem4j.protocol.command.Command;
+import io.maritimus.atem4j.protocol.command.CommandInterest;
+import io.maritimus.atem4j.protocol.command.CommandView;
+import io.maritimus.atem4j.protocol.udp.UdpMultiplexer;
+import io.maritimus.atem4j.protocol.udp.UdpReactor;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public class AtemClientTest {
+
+    static class RecordingClient extends AtemClient {
+        final List<Command> commands = new CopyOnWriteArrayList<>();
+        final List<Long> hellos = new CopyOnWriteArrayList<>();   // System.nanoTime() of every hello sent
+        CommandInterest interest = null;
+        boolean isViews = false;
+
+        RecordingClient(InetSocketAddress atemAddress) {
+            super(atemAddress);
+        }
+
+        @Override
+        protected CommandInterest getCommandInterest() {
+            return interest;
+        }
+
+        @Override
+        protected boolean isUsingCommandViews() {
+            return isViews;
+        }
+
+        @Override
+        protected void sendHello() throws IOException {
+            hellos.add(System.nanoTime());
+            super.sendHello();
+        }
+
+        @Override
+        protected void resendHello() throws IOException {
+            hellos.add(System.nanoTime());
+            super.resendHello();
+        }
+
+        @Override
+        protected void applyCommand(Command cmd) {
+            commands.add(cmd instanceof CommandView ? ((CommandView) cmd).copy() : cmd);
+        }
+    }
+
+    @Test
+    public void testConnectsAndInitializes() throws Exception {
+        try (SimulatedAtem atem = SimulatedAtem.start(0)) {
+            RecordingClient client = new RecordingClient(atem.getAddress());
+            Thread thread = new Thread(client::loop);
+            thread.start();
+
+            awaitState(client, AtemClient.State.WORKING, 3000);
+            assertTrue(
+                    client.commands.stream().anyMatch(cmd -> cmd instanceof CmdProgramInput),
+                    "dump is applied"
+            );
+            assertTrue(client.getRttEstimator().getSamples() > 0, "hello round trip is measured");
+
+            client.stop();
+            thread.join(1000);
+            assertFalse(thread.isAlive(), "loop is done after stop");
+            assertEquals(client.getState(), AtemClient.State.SLEEPING);
+        }
+    }
+
+    @Test
+    public void testOnlyCommandsOfInterestAreApplied() throws Exception {
+        try (SimulatedAtem atem = SimulatedAtem.start(0)) {
+            RecordingClient client = new RecordingClient(atem.getAddress());
+            client.interest = CommandInterest.of("PrgI");
+            AtomicInteger captured = new AtomicInteger();
+            client.setCommandCapture((rawCommand, block) -> captured.incrementAndGet());
+            Thread thread = new Thread(client::loop);
+            thread.start();
+
+            awaitState(client, AtemClient.State.WORKING, 3000);
+            assertFalse(client.commands.isEmpty(), "dump is applied");
+            assertTrue(client.commands.stream().allMatch(cmd -> cmd instanceof CmdProgramInput), "only PrgI");
+            assertTrue(captured.get() > client.commands.size(), "skipped blocks are captured");
+
+            client.stop();
+            thread.join(1000);
+        }
+    }
+
+    @Test
+    public void testCommandViewsAreCopied() throws Exception {
+        try (SimulatedAtem atem = SimulatedAtem.start(0)) {
+            RecordingClient client = new RecordingClient(atem.getAddress());
+            client.isViews = true;
+            Thread thread = new Thread(client::loop);
+            thread.start();
+
+            awaitState(client, AtemClient.State.WORKING, 3000);
+            assertTrue(
+                    client.commands.stream().anyMatch(cmd -> cmd instanceof CmdProgramInput),
+                    "dump is applied"
+            );
+
+            client.stop();
+            thread.join(1000);
+        }
+    }
+
+    @Test
+    public void testSentCommandsAreAcknowledged() throws Exception {
+        try (SimulatedAtem atem = SimulatedAtem.start(0)) {
+            RecordingClient client = new RecordingClient(atem.getAddress());
+            client.setOutboundWindowSize(4);
+            Thread thread = new Thread(client::loop);
+            thread.start();
+
+            awaitState(client, AtemClient.State.WORKING, 3000);
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int j = 0; j < 20; j++) {
+                futures.add(client.sendCommand(new CmdSetPreviewInput(0, j)));
+            }
+            // a stage attached after the completion runs on this thread, never on the protocol one
+            List<Thread> threads = new CopyOnWriteArrayList<>();
+            CompletableFuture<Void> last = futures.get(futures.size() - 1)
+                    .thenRun(() -> threads.add(Thread.currentThread()));
+            for (CompletableFuture<Void> future : futures) {
+                future.get(3, TimeUnit.SECONDS);
+            }
+            last.get(3, TimeUnit.SECONDS);
+            assertEquals(client.getOutboundWindow().getAcked(), 20);
+            assertNotSame(threads.get(0), thread, "dependent stages run off the protocol thread");
+
+            client.stop();
+            thread.join(1000);
+            assertTrue(
+                    client.sendCommand(new CmdSetPreviewInput(0, 1)).isCompletedExceptionally(),
+                    "stopped client fails commands"
+            );
+        }
+    }
+
+    @Test
+    public void testBurstIsCompletedByOneCumulativeAck() throws Exception {
+        try (SimulatedAtem atem = SimulatedAtem.start(0)) {
+            RecordingClient client = new RecordingClient(atem.getAddress());
+            client.setOutboundWindowSize(8);
+            Thread thread = new Thread(client::loop);
+            thread.start();
+
+            awaitState(client, AtemClient.State.WORKING, 3000);
+            atem.isAckingBursts = true;
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int j = 0; j < 32; j++) {
+                futures.add(client.sendCommand(new CmdSetPreviewInput(0, j)));
+            }
+            for (CompletableFuture<Void> future : futures) {
+                future.get(3, TimeUnit.SECONDS);
+            }
+            assertEquals(client.getOutboundWindow().getAcked(), 32);
+            assertEquals(client.getOutboundWindow().getResent(), 0, "nothing waits for its own ACK");
+
+            client.stop();
+            thread.join(1000);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testOversizedPacketIsRejected() throws Exception {
+        RecordingClient client = new RecordingClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), 9910));
+        Command[] commands = new Command[PacketHeader.MASK_SIZE];
+        for (int j = 0; j < commands.length; j++) {
+            commands[j] = new CmdSetPreviewInput(0, 1);
+        }
+        client.sendCommand(commands);
+    }
+
+    @Test
+    public void testUnwritableCommandIsRejected() throws Exception {
+        RecordingClient client = new RecordingClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), 9910));
+        try {
+            client.sendCommand(new CmdSetPreviewInput(0, 1), new CmdProgramInput(0, 0, 1));
+            fail("command without write is sent");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("CmdProgramInput"), ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testHelloIsResentOnTime() throws Exception {
+        try (DatagramChannel silent = DatagramChannel.open()) {
+            silent.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+            RecordingClient client = new RecordingClient((InetSocketAddress) silent.getLocalAddress());
+            Thread thread = new Thread(client::loop);
+            thread.start();
+
+            long deadline = System.currentTimeMillis() + 3000;
+            while (client.hellos.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            client.stop();
+            thread.join(1000);
+
+            assertTrue(client.hellos.size() >= 2, "hello is resent");
+            long intervalNanos = client.hellos.get(1) - client.hellos.get(0);
+            long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(AtemClient.TIMEOUT_HELLO_MS);
+            assertTrue(
+                    intervalNanos >= timeoutNanos && intervalNanos < timeoutNanos + TimeUnit.MILLISECONDS.toNanos(40),
+                    String.format("hello is resent after %d us", TimeUnit.NANOSECONDS.toMicros(intervalNanos))
+            );
+        }
+    }
+
+    @Test
+    public void testManyClientsShareOneScheduler() throws Exception {
+        try (SimulatedAtem atem = SimulatedAtem.start(0);
+             UdpReactor reactor = UdpReactor.create(1);
+             AtemScheduler scheduler = AtemScheduler.create()) {
+
+            RecordingClient[] clients = new RecordingClient[20];
+            for (int j = 0; j < clients.length; j++) {
+                clients[j] = new RecordingClient(atem.getAddress());
+                clients[j].setReactor(reactor);
+                clients[j].start(scheduler);
+            }
+
+            for (RecordingClient client : clients) {
+                awaitState(client, AtemClient.State.WORKING, 3000);
+            }
+
+            for (RecordingClient client : clients) {
+                client.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testManyClientsShareOneSocket() throws Exception {
+        try (SimulatedAtem atem1 = SimulatedAtem.start(0);
+             SimulatedAtem atem2 = SimulatedAtem.start(0);
+             UdpMultiplexer multiplexer = UdpMultiplexer.create(0);
+             AtemScheduler scheduler = AtemScheduler.create()) {
+
+            // several sessions to the same switcher have to be told apart by uid
+            RecordingClient[] clients = new RecordingClient[10];
+            for (int j = 0; j < clients.length; j++) {
+                clients[j] = new RecordingClient(j % 2 == 0 ? atem1.getAddress() : atem2.getAddress());
+                clients[j].setMultiplexer(multiplexer);
+                clients[j].start(scheduler);
+            }
+
+            for (RecordingClient client : clients) {
+                awaitState(client, AtemClient.State.WORKING, 3000);
+                assertEquals(
+                        client.commands.stream().filter(cmd -> cmd instanceof CmdProgramInput).count(),
+                        1L,
+                        "dump is applied once"
+                );
+            }
+            assertEquals(multiplexer.getSessions(), clients.length, "sessions");
+
+            for (RecordingClient client : clients) {
+                client.stop();
+            }
+
+            long deadline = System.currentTimeMillis() + 1000;
+            while (multiplexer.getSessions() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(multiplexer.getSessions(), 0, "sessions after stop");
+        }
+    }
+
+    @Test
+    public void testDecodeOnWorkerPool() throws Exception {
+        try (SimulatedAtem atem = SimulatedAtem.start(0);
+             DecodeStage decodeStage = DecodeStage.create(2);
+             AtemScheduler scheduler = AtemScheduler.create()) {
+
+            RecordingClient[] clients = new RecordingClient[10];
+            for (int j = 0; j < clients.length; j++) {
+                clients[j] = new RecordingClient(atem.getAddress());
+                clients[j].setDecodeStage(decodeStage);
+                clients[j].start(scheduler);
+            }
+
+            for (RecordingClient client : clients) {
+                awaitState(client, AtemClient.State.WORKING, 3000);
+                assertEquals(
+                        client.commands.stream().filter(cmd -> cmd instanceof CmdProgramInput).count(),
+                        1L,
+                        "dump is applied once"
+                );
+            }
+
+            assertTrue(decodeStage.metrics.getItems() >= clients.length * 2, "hello and dump are decoded by stage");
+            assertTrue(scheduler.applyMetrics.getItems() >= clients.length * 2, "hello and dump are applied");
+
+            for (RecordingClient client : clients) {
+                client.stop();
+            }
+        }
+    }
+
+    static void awaitState(AtemClient client, AtemClient.State state, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (client.getState() != state && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(client.getState(), state, "state");
+    }
+}
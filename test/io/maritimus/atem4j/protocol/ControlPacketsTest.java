@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.testng.Assert.*;
+
+public class ControlPacketsTest {
+
+    @Test
+    public void testTemplatesMatchEncodedPackets() throws Exception {
+        ControlPackets packets = new ControlPackets(0x1234);
+
+        assertEquals(bytes(packets.ack(7)),
+                encode(new Packet(new PacketHeader(PacketHeader.FLAG_ACK, PacketHeader.HEADER_LENGTH, 0x1234, 7, 0, 0))));
+        assertEquals(bytes(packets.ackRequest(8)),
+                encode(new Packet(new PacketHeader(PacketHeader.FLAG_ACKREQ, PacketHeader.HEADER_LENGTH, 0x1234, 0, 8, 0))));
+        assertEquals(bytes(packets.resendAckRequest(9)),
+                encode(new Packet(new PacketHeader(PacketHeader.FLAG_ACKREQ | PacketHeader.FLAG_RESEND,
+                        PacketHeader.HEADER_LENGTH, 0x1234, 0, 9, 0))));
+        assertEquals(bytes(packets.hello()), encode(PacketHello.createClientFirstHello(0x1234)));
+        assertEquals(bytes(packets.resendHello()), encode(PacketHello.createClientResendHello(0x1234)));
+    }
+
+    @Test
+    public void testPatchingReusesTemplate() throws Exception {
+        ControlPackets packets = new ControlPackets(100);
+
+        ByteBuffer first = packets.ack(1);
+        ByteBuffer second = packets.ack(0x7FFF);
+        assertSame(first, second, "same buffer");
+
+        PacketHeader header = PacketHeader.read(second);
+        assertEquals(header.ackId, 0x7FFF);
+        assertEquals(header.uid, 100);
+    }
+
+    @Test
+    public void testSetUidReencodes() throws Exception {
+        ControlPackets packets = new ControlPackets(100);
+        packets.setUid(200);
+
+        assertEquals(packets.getUid(), 200);
+        assertEquals(PacketHeader.read(packets.ackRequest(5)).uid, 200);
+        assertEquals(PacketHeader.read(packets.hello()).uid, 200);
+    }
+
+    private static byte[] bytes(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.remaining()];
+        buf.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static byte[] encode(Packet packet) {
+        ByteBuffer buf = ByteBuffer.allocate(packet.header.size);
+        packet.write(buf);
+        return buf.array();
+    }
+}
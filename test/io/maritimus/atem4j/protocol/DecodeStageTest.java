@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import io.maritimus.atem4j.protocol.udp.SilentUdpClientListener;
+import io.maritimus.atem4j.protocol.udp.UdpClient;
+import org.testng.annotations.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public class DecodeStageTest {
+
+    @Test
+    public void testSessionOrderIsPreserved() throws Exception {
+        final int count = 500;
+
+        try (DatagramChannel atem = DatagramChannel.open();
+             DecodeStage stage = DecodeStage.create(4)) {
+            atem.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+            UdpClient client = UdpClient.create(
+                    (InetSocketAddress) atem.getLocalAddress(),
+                    new SilentUdpClientListener()
+            );
+            AtomicInteger decodedRuns = new AtomicInteger();
+            DecodeStage.Session session = stage.open(client, decodedRuns::incrementAndGet);
+            Thread receiver = new Thread(() -> {
+                while (!client.isStopped) {
+                    if (client.receiveBatch() > 0) {
+                        session.schedule();
+                    }
+                }
+            });
+            receiver.start();
+
+            InetSocketAddress clientAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), client.localPort);
+            ByteBuffer out = ByteBuffer.allocate(PacketHeader.HEADER_LENGTH);
+            for (int j = 1; j <= count; j++) {
+                out.clear();
+                new PacketHeader(PacketHeader.FLAG_ACKREQ, PacketHeader.HEADER_LENGTH, 0x8001, 0, j, 0).write(out);
+                out.flip();
+                atem.send(out, clientAddress);
+                if (j % 20 == 0) {
+                    Thread.sleep(1);    // stay below the socket buffer, even if the receiver is descheduled for a while
+                }
+            }
+
+            int expected = 1;
+            long deadline = System.currentTimeMillis() + 5000;
+            while (expected <= count && System.currentTimeMillis() < deadline) {
+                Packet packet = session.poll();
+                if (packet == null) {
+                    Thread.yield();
+                    continue;
+                }
+                assertEquals(packet.header.packageId, expected, "order");
+                expected++;
+            }
+            assertEquals(expected - 1, count, "all packets are decoded");
+
+            client.stop();
+            receiver.join(1000);
+
+            assertTrue(decodedRuns.get() > 0, "applying side is notified");
+            assertEquals(stage.metrics.getItems(), count, "decode metrics");
+            assertEquals(client.pool.getLeased(), 0, "buffers are released after decoding");
+            session.close();
+        }
+    }
+}
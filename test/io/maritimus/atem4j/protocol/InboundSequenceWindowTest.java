@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+
+import static io.maritimus.atem4j.protocol.InboundSequenceWindow.*;
+import static org.testng.Assert.*;
+
+public class InboundSequenceWindowTest {
+
+    @Test
+    public void testDuplicatesAndGaps() throws Exception {
+        InboundSequenceWindow window = new InboundSequenceWindow();
+
+        assertEquals(window.accept(1), ACCEPTED);
+        assertEquals(window.accept(2), ACCEPTED);
+        assertEquals(window.accept(2), DUPLICATE);
+
+        assertEquals(window.accept(6), GAP);
+        assertEquals(window.getGapStart(), 3);
+        assertEquals(window.getGapLength(), 3);
+        assertEquals(window.getMissing(), 3);
+        assertEquals(window.getContiguous(), 2, "stays before the gap");
+
+        assertEquals(window.accept(4), LATE, "fills the gap");
+        assertEquals(window.accept(4), DUPLICATE);
+        assertEquals(window.getMissing(), 2);
+        assertEquals(window.getContiguous(), 2, "3 is still missing");
+
+        assertEquals(window.getAccepted(), 4);
+        assertEquals(window.getDuplicates(), 2);
+        assertEquals(window.getLate(), 1);
+        assertEquals(window.getDuplicateRate(), 2.0 / 6, 1e-9);
+        assertEquals(window.getLossRate(), 2.0 / 6, 1e-9);
+
+        assertEquals(window.accept(3), LATE);
+        assertEquals(window.getContiguous(), 4, "5 is still missing");
+        assertEquals(window.accept(5), LATE);
+        assertEquals(window.getContiguous(), 6);
+    }
+
+    @Test
+    public void testWrapAroundAndOldIds() throws Exception {
+        InboundSequenceWindow window = new InboundSequenceWindow();
+
+        assertEquals(window.accept(0x7FFF), ACCEPTED);
+        assertEquals(window.accept(0), ACCEPTED, "wraps");
+        assertEquals(window.accept(0x7FFF), DUPLICATE);
+
+        assertEquals(window.accept(100), GAP);
+        assertEquals(window.accept(1), LATE, "out of the window, let through");
+
+        window.reset();
+        assertEquals(window.accept(10), ACCEPTED);
+        assertEquals(window.accept(8), LATE, "before the first id");
+        assertEquals(window.getMissing(), 99, "not counted as missing");
+    }
+
+    @Test
+    public void testPeeksRawDatagram() throws Exception {
+        InboundSequenceWindow window = new InboundSequenceWindow();
+
+        ByteBuffer ackRequest = datagram(PacketHeader.FLAG_ACKREQ, 7);
+        assertEquals(window.accept(ackRequest), ACCEPTED);
+        assertEquals(ackRequest.position(), 0, "position is kept");
+        assertEquals(window.accept(ackRequest), DUPLICATE);
+
+        ByteBuffer hello = datagram(PacketHeader.FLAG_HELLO | PacketHeader.FLAG_ACKREQ, 7);
+        assertEquals(window.accept(hello), ACCEPTED, "hello is not tracked");
+        assertEquals(window.accept(datagram(PacketHeader.FLAG_ACK, 7)), ACCEPTED, "ack is not tracked");
+    }
+
+    private static ByteBuffer datagram(int flags, int packageId) {
+        ByteBuffer buf = ByteBuffer.allocate(PacketHeader.HEADER_LENGTH);
+        new PacketHeader(flags, PacketHeader.HEADER_LENGTH, 1, 0, packageId, 0).write(buf);
+        buf.flip();
+        return buf;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import io.maritimus.atem4j.protocol.tally.TallyDelta;
+import io.maritimus.atem4j.protocol.tally.TallyTable;
+import org.testng.annotations.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static io.maritimus.atem4j.protocol.tally.TallyFixtures.tally;
+import static org.testng.Assert.*;
+
+public class ListenerSubscriptionTest {
+
+    /** runs the deliveries on demand only, a stalled consumer */
+    static class ManualExecutor implements Executor {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    static class RecordingListener implements ITallyClientListener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onProgramChanged(TallyClient client, int programIndex) {
+            events.add("pgm " + programIndex);
+        }
+
+        @Override
+        public void onPreviewChanged(TallyClient client, int previewIndex) {
+            events.add("prv " + previewIndex);
+        }
+
+        @Override
+        public void onTallyChanged(TallyClient client, TallyDelta delta, TallyTable table) {
+            events.add(delta.toString());
+        }
+    }
+
+    @Test
+    public void testConflatesWhileBehind() throws Exception {
+        TallyClient client = createClient();
+        ManualExecutor executor = new ManualExecutor();
+        RecordingListener listener = new RecordingListener();
+        ListenerSubscription subscription = client.subscribe(listener, executor, 8, ConflationPolicy.CONFLATE);
+
+        client.setProgramIndex(1);
+        client.setPreviewIndex(2);
+        client.setProgramIndex(3);
+        client.setTally(tally(1, 1, 2, 2));
+        client.setTally(tally(1, 2, 2, 1));
+        assertEquals(subscription.getPending(), 3, "program, preview and tally");
+        assertEquals(subscription.getConflated(), 2);
+
+        executor.runAll();
+        assertEquals(listener.events.get(0), "prv 2");
+        assertEquals(listener.events.get(1), "pgm 3", "latest program only");
+        assertEquals(listener.events.get(2), "TallyDelta 1: -->PVW, 2: -->PGM", "merged delta");
+    }
+
+    @Test
+    public void testDropsNewestWhenFull() throws Exception {
+        TallyClient client = createClient();
+        ManualExecutor executor = new ManualExecutor();
+        RecordingListener listener = new RecordingListener();
+        ListenerSubscription subscription = client.subscribe(listener, executor, 2, ConflationPolicy.DROP_NEWEST);
+
+        for (int j = 1; j <= 5; j++) {
+            client.setProgramIndex(j);
+        }
+        assertEquals(subscription.getDropped(), 3);
+
+        executor.runAll();
+        assertEquals(listener.events.toString(), "[pgm 1, pgm 2]");
+
+        subscription.close();
+        client.setProgramIndex(6);
+        executor.runAll();
+        assertEquals(listener.events.size(), 2, "closed");
+    }
+
+    @Test
+    public void testSlowListenerDoesNotBlockTheProtocolThread() throws Exception {
+        TallyClient client = createClient();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch delivered = new CountDownLatch(1);
+        client.subscribe(new ITallyClientListener() {
+            @Override
+            public void onProgramChanged(TallyClient client, int programIndex) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                delivered.countDown();
+            }
+        });
+
+        long start = System.nanoTime();
+        for (int j = 1; j <= 1000; j++) {
+            client.setProgramIndex(j);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "setters don't wait");
+
+        release.countDown();
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+    }
+
+    private static TallyClient createClient() {
+        return TallyClient.create(new InetSocketAddress("127.0.0.1", 9910));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import io.maritimus.atem4j.protocol.command.CmdSetPreviewInput;
+import io.maritimus.atem4j.protocol.command.Command;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures acknowledged commands per second against a {@link SimulatedAtem} on loopback,
+ * for several sizes of the outbound window.
+ *
+ * Run it as a plain java program with the window sizes as arguments, it is not a part of the test suite.
+ */
+public class OutboundWindowBenchmark {
+
+    public static final int[] DEFAULT_WINDOW_SIZES = {1, 4, 16, 64};
+    public static final long WARMUP_MS = 1_000;
+    public static final long MEASURE_MS = 3_000;
+
+    public static void main(String[] args) throws Exception {
+        int[] windowSizes = DEFAULT_WINDOW_SIZES;
+        if (args.length > 0) {
+            windowSizes = new int[args.length];
+            for (int j = 0; j < args.length; j++) {
+                windowSizes[j] = Integer.parseInt(args[j]);
+            }
+        }
+
+        try (SimulatedAtem atem = SimulatedAtem.start(500)) {
+            for (int windowSize : windowSizes) {
+                run(atem, windowSize);
+            }
+        }
+    }
+
+    private static void run(SimulatedAtem atem, int windowSize) throws Exception {
+        AtemClient client = new AtemClient(atem.getAddress()) {
+            @Override
+            protected void applyCommand(Command cmd) {
+                // state is not kept
+            }
+        };
+        client.setOutboundWindowSize(windowSize);
+        Thread thread = new Thread(client::loop, "atem-benchmark");
+        thread.start();
+
+        long started = System.currentTimeMillis();
+        while (client.getState() != AtemClient.State.WORKING) {
+            if (System.currentTimeMillis() - started > 5_000) {
+                throw new IllegalStateException("client is not connected");
+            }
+            Thread.sleep(10);
+        }
+
+        // twice the window is queued, so the window never runs dry
+        Semaphore permits = new Semaphore(windowSize * 2);
+        AtomicLong acked = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+
+        long measureFrom = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WARMUP_MS);
+        long measureTo = measureFrom + TimeUnit.MILLISECONDS.toNanos(MEASURE_MS);
+        long ackedAtStart = -1;
+        int source = 0;
+
+        while (System.nanoTime() < measureTo) {
+            if (ackedAtStart < 0 && System.nanoTime() >= measureFrom) {
+                ackedAtStart = acked.get();
+            }
+
+            if (!permits.tryAcquire(10, TimeUnit.MILLISECONDS)) {
+                continue;
+            }
+
+            source = (source + 1) & 0xFF;
+            client.sendCommand(new CmdSetPreviewInput(0, source)).whenComplete((result, ex) -> {
+                (ex == null ? acked : failed).incrementAndGet();
+                permits.release();
+            });
+        }
+
+        long measured = acked.get() - Math.max(ackedAtStart, 0);
+        OutboundWindow window = client.getOutboundWindow();
+        System.out.println(String.format(
+                "window %4d: %8.0f commands/s, resent %d, failed %d",
+                windowSize,
+                measured * 1000.0 / MEASURE_MS,
+                window != null ? window.getResent() : 0,
+                failed.get()
+        ));
+
+        client.stop();
+        thread.join(1000);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import io.maritimus.atem4j.protocol.concurrent.HashedTimerWheel;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.testng.Assert.*;
+
+public class OutboundWindowTest {
+
+    static class Fixture {
+        final HashedTimerWheel timers = new HashedTimerWheel();
+        final List<PacketHeader> sent = new ArrayList<>();
+        int nextId = 0;
+        final OutboundWindow window = new OutboundWindow(timers, () -> ++nextId, datagram -> {
+            try {
+                sent.add(PacketHeader.read(datagram));
+            } catch (ParseException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+
+        CompletableFuture<Void> submit() {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            window.submit(datagram(), future);
+            return future;
+        }
+
+        void elapse(long ms) {
+            timers.expire(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ms));
+        }
+    }
+
+    @Test
+    public void testWindowLimitsPacketsInFlight() throws Exception {
+        Fixture f = new Fixture();
+        f.window.setWindowSize(2);
+
+        CompletableFuture<Void> first = f.submit();
+        CompletableFuture<Void> second = f.submit();
+        CompletableFuture<Void> third = f.submit();
+        assertTrue(f.sent.isEmpty(), "nothing is sent before open");
+
+        f.window.open();
+        assertEquals(f.sent.size(), 2);
+        assertEquals(f.window.getInFlight(), 2);
+        assertEquals(f.window.getQueued(), 1);
+
+        assertTrue(f.window.onAck(1));
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(f.sent.size(), 3, "queued packet takes the free slot");
+        assertEquals(f.sent.get(2).packageId, 3);
+
+        assertFalse(f.window.onAck(1), "acked already");
+        assertTrue(f.window.onAck(3), "covers 2 as well");
+        assertTrue(second.isDone() && third.isDone());
+        assertEquals(f.window.getAcked(), 3);
+        assertEquals(f.timers.size(), 0, "timers are cancelled");
+    }
+
+    @Test
+    public void testAckCoversEarlierIdsAcrossWrap() throws Exception {
+        Fixture f = new Fixture();
+        f.nextId = 0x7FFD;
+        f.window.open();
+
+        CompletableFuture<Void> first = f.submit();     // 0x7FFE
+        CompletableFuture<Void> second = f.submit();    // 0x7FFF
+        f.nextId = -1;
+        CompletableFuture<Void> third = f.submit();     // 0
+        CompletableFuture<Void> fourth = f.submit();    // 1
+
+        assertTrue(f.window.onAck(0));
+        assertTrue(first.isDone() && second.isDone() && third.isDone());
+        assertFalse(fourth.isDone(), "after the ackId");
+        assertEquals(f.window.getInFlight(), 1);
+    }
+
+    @Test
+    public void testResendsWithBackoffUntilFailed() throws Exception {
+        Fixture f = new Fixture();
+        f.window.setTimeouts(TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(20));
+        f.window.setMaxAttempts(3);
+        f.window.open();
+
+        CompletableFuture<Void> future = f.submit();
+        f.elapse(15);
+        assertEquals(f.sent.size(), 2, "resent after the first timeout");
+        assertTrue(f.sent.get(1).isResend());
+        assertEquals(f.sent.get(1).packageId, f.sent.get(0).packageId, "same package id");
+
+        f.elapse(40);
+        assertEquals(f.sent.size(), 3);
+        f.elapse(80);
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            future.get();
+            fail("must be failed");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+        assertEquals(f.window.getInFlight(), 0);
+    }
+
+    @Test
+    public void testCloseFailsEverything() throws Exception {
+        Fixture f = new Fixture();
+        f.window.setWindowSize(1);
+        f.window.open();
+
+        CompletableFuture<Void> inFlight = f.submit();
+        CompletableFuture<Void> queued = f.submit();
+        f.window.close(new IllegalStateException("closed"));
+
+        assertTrue(inFlight.isCompletedExceptionally());
+        assertTrue(queued.isCompletedExceptionally());
+        assertEquals(f.window.getFailed(), 2);
+        assertEquals(f.timers.size(), 0);
+    }
+
+    private static ByteBuffer datagram() {
+        ByteBuffer buf = ByteBuffer.allocate(PacketHeader.HEADER_LENGTH);
+        new PacketHeader(PacketHeader.FLAG_ACKREQ, PacketHeader.HEADER_LENGTH, 0, 0, 0, 0).write(buf);
+        buf.flip();
+        return buf;
+    }
+}
@@ -56,7 +56,7 @@ public class ProtocolTest {
         assertEquals(header.packageId, 0x002e, "packageId");
 
         CmdUnknown cmd1 = (CmdUnknown)Command.read(buf);
-        assertEquals(cmd1.command       , "CPvI");
+        assertEquals(cmd1.getCommand()  , "CPvI");
         assertEquals(cmd1.blockSize, 0x000c, "cmd1 block size");
         assertEquals(cmd1.payloadHex    , "000C3E74435076490004C0D5".toUpperCase(), "cmd1 payload");
     }
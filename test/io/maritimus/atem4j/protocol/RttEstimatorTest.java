@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class RttEstimatorTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testFirstSampleAndSmoothing() throws Exception {
+        RttEstimator rtt = new RttEstimator(200 * MS, 10 * MS, 1000 * MS);
+        assertEquals(rtt.getRetransmitTimeoutNanos(), 200 * MS, "initial");
+
+        rtt.sample(40 * MS);
+        assertEquals(rtt.getSmoothedRttNanos(), 40 * MS);
+        assertEquals(rtt.getRttVarianceNanos(), 20 * MS);
+        assertEquals(rtt.getRetransmitTimeoutNanos(), 120 * MS, "srtt + 4 * rttvar");
+
+        rtt.sample(40 * MS);
+        assertEquals(rtt.getSmoothedRttNanos(), 40 * MS);
+        assertEquals(rtt.getRttVarianceNanos(), 15 * MS);
+        assertEquals(rtt.getSamples(), 2);
+    }
+
+    @Test
+    public void testFloorCeilingAndBackoff() throws Exception {
+        RttEstimator rtt = new RttEstimator(200 * MS, 30 * MS, 1000 * MS);
+
+        for (int j = 0; j < 50; j++) {
+            rtt.sample(MS / 10);
+        }
+        assertEquals(rtt.getRetransmitTimeoutNanos(), 30 * MS, "floor on a fast link");
+
+        rtt.backoff();
+        assertEquals(rtt.getRetransmitTimeoutNanos(), 60 * MS);
+        for (int j = 0; j < 10; j++) {
+            rtt.backoff();
+        }
+        assertEquals(rtt.getRetransmitTimeoutNanos(), 1000 * MS, "ceiling");
+
+        rtt.sample(MS / 10);
+        assertEquals(rtt.getRetransmitTimeoutNanos(), 30 * MS, "a sample ends the backoff");
+        assertEquals(rtt.getTimeoutNanos(1000 * MS, 2, 1000 * MS, 6000 * MS), 1060 * MS);
+        assertEquals(rtt.getTimeoutNanos(0, 10, 500 * MS, 8000 * MS), 500 * MS, "state floor");
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal switcher for tests: answers hello, sends the initial state dump,
+ * acknowledges ack requests and keeps sessions alive.
+ */
+public class SimulatedAtem implements Runnable, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(SimulatedAtem.class);
+
+    public static final String DUMP_COMMANDS =
+            "000CA7B45F76657200020010" +                                 // _ver 2.16
+            "001400A45F746F70011202000200000001000138" +                 // _top
+            "000C7BA45072674900790001" +                                 // PrgI 1
+            "0010006550727649008800060000000A" +                         // PrvI 6
+            "000C0000496E436D01000000";                                  // InCm
+
+    public final DatagramSocket socket;
+    public final long keepAliveMs;
+
+    public final AtomicInteger hellos = new AtomicInteger();
+    public final AtomicLong acksReceived = new AtomicLong();
+    public final AtomicLong ackRequestsReceived = new AtomicLong();
+
+    // when set, a burst of ack requesting packets is answered by one ACK of the latest id once the socket is idle
+    public volatile boolean isAckingBursts = false;
+
+    // by client address and session uid, many sessions may share one client socket
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSessionUid = new AtomicInteger(0x8001);
+    private final Thread thread;
+    private volatile boolean isStopped = false;
+
+    public static SimulatedAtem start(long keepAliveMs) throws IOException {
+        SimulatedAtem atem = new SimulatedAtem(keepAliveMs);
+        atem.thread.start();
+        return atem;
+    }
+
+    private SimulatedAtem(long keepAliveMs) throws IOException {
+        this.keepAliveMs = keepAliveMs;
+        socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        socket.setSoTimeout(5);
+        socket.setReceiveBufferSize(1 << 20);
+        thread = new Thread(this, "simulated-atem");
+        thread.setDaemon(true);
+    }
+
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+    }
+
+    public int getSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * Sends the commands to every initialized session as an ack requesting packet.
+     */
+    public void broadcast(String commandsHex) throws IOException {
+        for (Session session : sessions.values()) {
+            session.send(PacketHeader.FLAG_ACKREQ, 0, Utils.parseHexString(commandsHex));
+        }
+    }
+
+    @Override
+    public void run() {
+        byte[] buf = new byte[2048];
+        long lastKeepAlive = System.currentTimeMillis();
+
+        while (!isStopped) {
+            DatagramPacket datagram = new DatagramPacket(buf, buf.length);
+            try {
+                socket.receive(datagram);
+                onDatagram(datagram);
+            } catch (SocketTimeoutException ex) {
+                // idle
+                flushBurstAcks();
+            } catch (IOException ex) {
+                if (!isStopped) {
+                    log.error("receiving is failed", ex);
+                }
+            } catch (ParseException ex) {
+                log.error("can't parse client datagram", ex);
+            }
+
+            long now = System.currentTimeMillis();
+            if (keepAliveMs > 0 && now - lastKeepAlive >= keepAliveMs) {
+                lastKeepAlive = now;
+                for (Session session : sessions.values()) {
+                    try {
+                        session.send(PacketHeader.FLAG_ACKREQ, 0, ByteBuffer.allocate(0));
+                    } catch (IOException ex) {
+                        // client is gone
+                    }
+                }
+            }
+        }
+    }
+
+    private void onDatagram(DatagramPacket datagram) throws IOException, ParseException {
+        ByteBuffer buf = ByteBuffer.wrap(datagram.getData(), 0, datagram.getLength());
+        PacketHeader header = PacketHeader.read(buf);
+        SocketAddress from = datagram.getSocketAddress();
+
+        if (header.isHello()) {
+            hellos.incrementAndGet();
+            Session session = new Session(from, header.uid, nextSessionUid.getAndIncrement() & 0xFFFF);
+            sessions.put(sessionKey(from, session.uid), session);
+            session.sendRaw(PacketHeader.FLAG_HELLO, header.uid, 0, 0, Utils.parseHexString("0200000000000000"));
+            session.send(PacketHeader.FLAG_ACKREQ, 0, Utils.parseHexString(DUMP_COMMANDS));
+            return;
+        }
+
+        if ((header.bitmask & PacketHeader.FLAG_ACK) != 0) {
+            acksReceived.incrementAndGet();
+        }
+
+        if (header.isAckRequest()) {
+            ackRequestsReceived.incrementAndGet();
+            Session session = sessions.get(sessionKey(from, header.uid));
+            if (session == null) {
+                return;
+            }
+            if (isAckingBursts) {
+                session.burstAckId = header.packageId;
+            } else {
+                session.sendRaw(PacketHeader.FLAG_ACK, session.uid, header.packageId, 0, ByteBuffer.allocate(0));
+            }
+        }
+    }
+
+    private void flushBurstAcks() {
+        for (Session session : sessions.values()) {
+            if (session.burstAckId < 0) {
+                continue;
+            }
+            try {
+                session.sendRaw(PacketHeader.FLAG_ACK, session.uid, session.burstAckId, 0, ByteBuffer.allocate(0));
+            } catch (IOException ex) {
+                // client is gone
+            }
+            session.burstAckId = -1;
+        }
+    }
+
+    private static String sessionKey(SocketAddress address, int uid) {
+        return address + "/" + uid;
+    }
+
+    @Override
+    public void close() {
+        isStopped = true;
+        try {
+            thread.join(1000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        socket.close();
+    }
+
+    class Session {
+        final SocketAddress address;
+        final int helloUid;
+        final int uid;
+        int packageId = 0;
+        int burstAckId = -1;
+
+        Session(SocketAddress address, int helloUid, int uid) {
+            this.address = address;
+            this.helloUid = helloUid;
+            this.uid = uid;
+        }
+
+        synchronized void send(int flags, int ackId, ByteBuffer payload) throws IOException {
+            packageId = (packageId + 1) & 0x7FFF;
+            sendRaw(flags, uid, ackId, packageId, payload);
+        }
+
+        void sendRaw(int flags, int uid, int ackId, int packageId, ByteBuffer payload) throws IOException {
+            ByteBuffer out = ByteBuffer.allocate(PacketHeader.HEADER_LENGTH + payload.remaining());
+            new PacketHeader(flags, out.capacity(), uid, ackId, packageId, 0).write(out);
+            out.put(payload);
+            socket.send(new DatagramPacket(out.array(), out.capacity(), address));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static io.maritimus.atem4j.protocol.tally.TallyFixtures.tally;
+import static org.testng.Assert.*;
+
+public class TallyClientTest {
+
+    @Test
+    public void testSnapshotIsPublishedPerChange() throws Exception {
+        TallyClient client = TallyClient.create(new InetSocketAddress("127.0.0.1", 9910));
+        TallySnapshot before = client.getSnapshot();
+
+        client.setProgramIndex(3);
+        client.setNames(3, "CAM3", "Camera 3");
+
+        TallySnapshot after = client.getSnapshot();
+        assertEquals(after.version, before.version + 2, "version");
+        assertEquals(after.programIndex, 3);
+        assertEquals(after.getLongName(3), "Camera 3");
+        assertEquals(before.programIndex, 0, "published snapshot never changes");
+        assertEquals(before.getShortName(3), "?3");
+    }
+
+    @Test
+    public void testChangesSinceVersion() throws Exception {
+        TallyClient client = TallyClient.create(new InetSocketAddress("127.0.0.1", 9910));
+        client.setTally(tally(1, 0, 2, 0, 3, 0));
+        long version = client.getSnapshot().version;
+
+        assertTrue(client.changesSince(version).isEmpty(), "nothing changed");
+
+        client.setProgramIndex(2);
+        client.setTally(tally(1, 0, 2, 1, 3, 0));
+        client.setNames(2, "CAM2", "Camera 2");
+
+        TallyChanges changes = client.changesSince(version);
+        assertFalse(changes.isFull);
+        assertEquals(changes.getVersion(), version + 3);
+        assertEquals(changes.fields.keySet().toString(), "[pgm]");
+        assertEquals(changes.tally.getSources(), new int[]{2});
+        assertEquals(changes.renamed, new int[]{2});
+        assertEquals(changes.toJson().getJSONArray("tally").length(), 1);
+    }
+
+    @Test
+    public void testEvictedVersionFallsBackToFull() throws Exception {
+        TallyClient client = TallyClient.create(new InetSocketAddress("127.0.0.1", 9910));
+        long version = client.getSnapshot().version;
+
+        for (int j = 1; j <= TallyClient.HISTORY_SIZE + 1; j++) {
+            client.setProgramIndex(j);
+        }
+
+        TallyChanges changes = client.changesSince(version);
+        assertTrue(changes.isFull, "evicted");
+        assertTrue(changes.toJson().has("snapshot"));
+        assertFalse(client.changesSince(client.getSnapshot().version - 1).isFull, "recent");
+        assertTrue(client.changesSince(-1).isFull, "unknown");
+    }
+
+    @Test
+    public void testJsonIsRenderedOncePerVersion() throws Exception {
+        TallyClient client = TallyClient.create(new InetSocketAddress("127.0.0.1", 9910));
+        client.setNames(1, "CAM \"1\"", "Камера 1");
+        client.setTally(tally(1, 1, 2, 2));
+
+        byte[] json = client.toJsonBytes();
+        assertSame(client.toJsonBytes(), json, "memoized");
+        assertEquals(
+                new String(json, StandardCharsets.UTF_8),
+                "{\"uuid\":" + client.getSnapshot().version + ",\"rus\":\"Проверка\",\"host\":\"/127.0.0.1:9910\","
+                        + "\"state\":\"SLEEPING\",\"firmware\":\"unknown\",\"product\":\"unknown\","
+                        + "\"sources\":0,\"pgm\":0,\"prv\":0,\"tally\":["
+                        + "{\"index\":1,\"name\":\"CAM \\\"1\\\"\",\"long\":\"Камера 1\",\"pgm\":true,\"prv\":false},"
+                        + "{\"index\":2,\"name\":\"?2\",\"long\":\"Input 2\",\"pgm\":false,\"prv\":true}]}"
+        );
+
+        client.setProgramIndex(2);
+        client.setTally(tally(1, 1, 2, 1));
+        assertNotSame(client.toJsonBytes(), json, "new version");
+        assertEquals(client.renderer.getRendered(), 3, "only the changed source is re-rendered");
+    }
+
+    @Test
+    public void testJsonIsTheDocumentOfToJson() throws Exception {
+        TallyClient client = TallyClient.create(new InetSocketAddress("127.0.0.1", 9910));
+        String shortName = "CAM\n\t\b\f\r\u0001";
+        String longName = "</script> \u0085\u2028 \"1\" \\ Камера \uD83C\uDFA5";
+        client.setNames(1, shortName, longName);
+        client.setTally(tally(1, 1, 2, 2));
+
+        String json = new String(client.toJsonBytes(), StandardCharsets.UTF_8);
+        assertTrue(new JSONObject(json).similar(client.getSnapshot().toJson()), json);
+        assertTrue(json.contains("\"name\":" + JSONObject.quote(shortName)), json);
+        assertTrue(json.contains("\"long\":" + JSONObject.quote(longName)), json);
+    }
+
+    @Test
+    public void testOnlyCreatedClientsNarrowTheInterest() throws Exception {
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", 9910);
+        assertSame(TallyClient.create(address).getCommandInterest(), TallyClient.TALLY_INTEREST);
+
+        TallyClient subclass = new TallyClient(address) {
+        };
+        assertNull(subclass.getCommandInterest(), "subclasses decode every command");
+        assertFalse(subclass.isUsingCommandViews(), "subclasses get command objects");
+        assertTrue(TallyClient.create(address).isUsingCommandViews());
+    }
+
+    @Test
+    public void testPacketIsPublishedAtOnce() throws Exception {
+        try (SimulatedAtem atem = SimulatedAtem.start(0)) {
+            TallyClient client = TallyClient.create(atem.getAddress());
+            Thread thread = new Thread(client::loop);
+            thread.start();
+
+            AtemClientTest.awaitState(client, AtemClient.State.WORKING, 3000);
+            TallySnapshot snapshot = client.getSnapshot();
+            long deadline = System.currentTimeMillis() + 1000;
+            while (snapshot.state != AtemClient.State.WORKING && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+                snapshot = client.getSnapshot();
+            }
+
+            assertEquals(snapshot.state, AtemClient.State.WORKING);
+            assertEquals(snapshot.programIndex, 1, "program of the same packet");
+            assertEquals(snapshot.previewIndex, 6, "preview of the same packet");
+
+            client.stop();
+            thread.join(1000);
+        }
+    }
+}
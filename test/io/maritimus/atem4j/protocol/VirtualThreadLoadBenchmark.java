@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol;
+
+import io.maritimus.atem4j.protocol.command.Command;
+import io.maritimus.atem4j.protocol.concurrent.VirtualThreads;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs thousands of sessions against a {@link SimulatedAtem}, each session on virtual threads,
+ * and checks that platform threads stay bounded by the carrier pool and the heap per session
+ * stays below {@link #MAX_HEAP_PER_SESSION}, failing with an exception otherwise.
+ *
+ * Run it as a plain java program with the amount of sessions as an argument, it is not a part of
+ * the test suite. The carrier pool is sized by -Djdk.virtualThreadScheduler.parallelism.
+ */
+public class VirtualThreadLoadBenchmark {
+
+    public static final int DEFAULT_SESSIONS = 2000;
+    public static final long CONNECT_TIMEOUT_MS = 60_000;
+    public static final long HOLD_MS = 5_000;
+    public static final int EXTRA_PLATFORM_THREADS = 16;     // jvm, gc, jit, simulated atem
+    public static final long MAX_HEAP_PER_SESSION = 128 * 1024;  // about 60 KB measured
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SESSIONS;
+        boolean isVirtual = VirtualThreads.isSupported();
+        if (!isVirtual) {
+            System.out.println("virtual threads are not supported by this jvm, running on platform threads");
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        System.gc();
+        int threadsBefore = threads.getThreadCount();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+        try (SimulatedAtem atem = SimulatedAtem.start(500)) {
+            ThreadFactory threadFactory = VirtualThreads.newThreadFactory("atem-session");
+            List<AtemClient> clients = new ArrayList<>(sessions);
+            for (int j = 0; j < sessions; j++) {
+                AtemClient client = new AtemClient(atem.getAddress()) {
+                    @Override
+                    protected void applyCommand(Command cmd) {
+                        // state is not kept
+                    }
+                };
+                client.start(threadFactory);
+                clients.add(client);
+            }
+
+            long started = System.currentTimeMillis();
+            int working = 0;
+            while (System.currentTimeMillis() - started < CONNECT_TIMEOUT_MS) {
+                working = countWorking(clients);
+                if (working == sessions) {
+                    break;
+                }
+                Thread.sleep(100);
+            }
+            long connectMs = System.currentTimeMillis() - started;
+
+            // sessions have to stay alive by keepalives
+            Thread.sleep(HOLD_MS);
+            int stillWorking = countWorking(clients);
+
+            System.gc();
+            int platformThreads = threads.getThreadCount() - threadsBefore;
+            int peakThreads = threads.getPeakThreadCount();
+            long heapPerSession = (memory.getHeapMemoryUsage().getUsed() - heapBefore) / sessions;
+
+            System.out.println(String.format(
+                    "sessions %d, working %d after %d ms, %d after hold, " +
+                            "platform threads +%d (peak %d), heap per session %d bytes",
+                    sessions,
+                    working,
+                    connectMs,
+                    stillWorking,
+                    platformThreads,
+                    peakThreads,
+                    heapPerSession
+            ));
+
+            for (AtemClient client : clients) {
+                client.stop();
+            }
+
+            if (stillWorking != sessions) {
+                throw new IllegalStateException(String.format(
+                        "sessions working = %d must be %d",
+                        stillWorking,
+                        sessions
+                ));
+            }
+
+            int threadLimit = Runtime.getRuntime().availableProcessors() + EXTRA_PLATFORM_THREADS;
+            if (isVirtual && platformThreads > threadLimit) {
+                throw new IllegalStateException(String.format(
+                        "platform threads = +%d must be <= %d",
+                        platformThreads,
+                        threadLimit
+                ));
+            }
+
+            if (heapPerSession > MAX_HEAP_PER_SESSION) {
+                throw new IllegalStateException(String.format(
+                        "heap per session = %d bytes must be <= %d",
+                        heapPerSession,
+                        MAX_HEAP_PER_SESSION
+                ));
+            }
+        }
+    }
+
+    private static int countWorking(List<AtemClient> clients) {
+        int working = 0;
+        for (AtemClient client : clients) {
+            if (client.getState() == AtemClient.State.WORKING) {
+                working++;
+            }
+        }
+        return working;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.command;
+
+import io.maritimus.atem4j.protocol.IntObjectMap;
+import io.maritimus.atem4j.protocol.Utils;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public class CommandRegistryTest {
+
+    private static final String CPVI_BLOCK = "000C3E74435076490004C0D5";
+
+    @Test
+    public void testUnknownCommandIsNamedLazily() throws Exception {
+        CmdUnknown cmd = (CmdUnknown) Command.read(Utils.parseHexString(CPVI_BLOCK));
+        assertEquals(cmd.rawCommand, Utils.parseCommand("CPvI"), "raw command");
+        assertEquals(cmd.getCommand(), "CPvI");
+    }
+
+    @Test
+    public void testApplicationDecoder() throws Exception {
+        CommandRegistry registry = CommandRegistry.createDefault();
+        registry.register("CPvI", CmdSetPreviewInput::read);
+
+        ByteBuffer buf = Utils.parseHexString("000C0000435076490100000A");
+        CmdSetPreviewInput cmd = (CmdSetPreviewInput) Command.read(buf, registry);
+        assertFalse(buf.hasRemaining());
+        assertEquals(cmd.me, 1, "me");
+        assertEquals(cmd.videoSource, 10, "videoSource");
+
+        assertTrue(Command.read(Utils.parseHexString(CPVI_BLOCK)) instanceof CmdUnknown, "default is not changed");
+
+        registry.unregister(Utils.parseCommand("CPvI"));
+        assertTrue(Command.read(Utils.parseHexString(CPVI_BLOCK), registry) instanceof CmdUnknown, "unregistered");
+    }
+
+    @Test
+    public void testReaderSkipsCommandsNotOfInterest() throws Exception {
+        // CPvI, PrgI with source 5
+        ByteBuffer buf = Utils.parseHexString(CPVI_BLOCK + "000C000050726749000000" + "05");
+        List<Integer> captured = new ArrayList<>();
+        CommandReader reader = new CommandReader(
+                CommandRegistry.getDefault(),
+                CommandInterest.of("PrgI"),
+                (rawCommand, block) -> {
+                    assertEquals(block.remaining(), 12, "whole block");
+                    assertTrue(block.isReadOnly());
+                    captured.add(rawCommand);
+                }
+        );
+
+        assertNull(reader.read(buf), "skipped");
+        assertEquals(buf.position(), 12, "positioned after the block");
+
+        CmdProgramInput cmd = (CmdProgramInput) reader.read(buf);
+        assertEquals(cmd.videoSource, 5, "videoSource");
+        assertFalse(buf.hasRemaining());
+
+        assertEquals(captured, Arrays.asList(Utils.parseCommand("CPvI"), Utils.parseCommand("PrgI")), "captured");
+    }
+
+    @Test
+    public void testIntObjectMap() throws Exception {
+        IntObjectMap<String> map = new IntObjectMap<>(2);
+        for (int j = 0; j < 1000; j++) {
+            assertNull(map.put(j * 31, "v" + j));
+        }
+        assertEquals(map.size(), 1000);
+
+        for (int j = 0; j < 1000; j += 2) {
+            assertEquals(map.remove(j * 31), "v" + j);
+        }
+        assertEquals(map.size(), 500);
+
+        for (int j = 0; j < 1000; j++) {
+            assertEquals(map.get(j * 31), j % 2 == 0 ? null : "v" + j, "key " + j * 31);
+        }
+        assertEquals(map.put(31, "x"), "v1", "replaced");
+    }
+}
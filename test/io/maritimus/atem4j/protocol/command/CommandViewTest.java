@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.command;
+
+import io.maritimus.atem4j.protocol.Packet;
+import io.maritimus.atem4j.protocol.ParseException;
+import io.maritimus.atem4j.protocol.Utils;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.testng.Assert.*;
+
+public class CommandViewTest {
+
+    // TlSr with 1=PGM, 2=PVW, 3=none
+    private static final String TLSR_BLOCK = "00140000546C53720003" + "000101" + "000202" + "000300" + "00";
+    // PrgI of me 0 and 1
+    private static final String PRGI_BLOCKS = "000C000050726749000000" + "05" + "000C000050726749010000" + "07";
+
+    @Test
+    public void testTallyBySourceView() throws Exception {
+        CommandReader reader = new CommandReader(CommandRegistry.getDefault(), null, null, new CommandViews());
+        ByteBuffer buf = Utils.parseHexString(TLSR_BLOCK);
+
+        TallyBySourceView view = (TallyBySourceView) reader.read(buf);
+        assertFalse(buf.hasRemaining());
+        assertEquals(view.count(), 3);
+        assertEquals(view.sourceAt(1), 2);
+        assertEquals(view.statusAt(1), CmdTallyBySource.STATUS_PREVIEW);
+        assertTrue(view.isOnProgram(1));
+        assertTrue(view.isOnPreview(2));
+        assertFalse(view.isOnProgram(3));
+
+        CmdTallyBySource copy = view.copy();
+        assertEquals(copy.length, 3);
+        assertTrue(copy.isOnProgram(1));
+        assertTrue(view.matches(copy), "copy matches");
+        assertTrue(copy.isOnProgram(1), "copy survives");
+    }
+
+    @Test
+    public void testViewsAreReusedPacketByPacket() throws Exception {
+        CommandReader reader = new CommandReader(CommandRegistry.getDefault(), null, null, new CommandViews());
+
+        Packet first = Packet.read(packet(PRGI_BLOCKS), reader);
+        ProgramInputView me0 = (ProgramInputView) first.commands.get(0);
+        ProgramInputView me1 = (ProgramInputView) first.commands.get(1);
+        assertFalse(me0 == me1, "blocks of one packet get own views");
+        assertEquals(me0.videoSource(), 5);
+        assertEquals(me1.me(), 1);
+        assertEquals(me1.videoSource(), 7);
+
+        Packet second = Packet.read(packet(PRGI_BLOCKS), reader);
+        assertSame(second.commands.get(0), me0, "reused by the next packet");
+    }
+
+    @Test(expectedExceptions = ParseException.class)
+    public void testShortPayloadIsRejected() throws Exception {
+        CommandReader reader = new CommandReader(CommandRegistry.getDefault(), null, null, new CommandViews());
+        // TlSr claims 3 sources, carries 1
+        reader.read(Utils.parseHexString("000F0000546C53720003000101"));
+    }
+
+    private static ByteBuffer packet(String blocks) {
+        int size = 12 + blocks.length() / 2;
+        return Utils.parseHexString(String.format("%04X00010000000000000000", 0x0800 | size) + blocks);
+    }
+}
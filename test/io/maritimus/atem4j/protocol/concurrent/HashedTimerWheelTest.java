@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.concurrent;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public class HashedTimerWheelTest {
+
+    private static final long TICK = 1_000_000;
+
+    @Test
+    public void testFiresAtDeadlineNotBefore() throws Exception {
+        HashedTimerWheel wheel = new HashedTimerWheel(TICK, 64, 0);
+        List<String> fired = new ArrayList<>();
+        HashedTimerWheel.Timer timer = new HashedTimerWheel.Timer(() -> fired.add("a"));
+
+        wheel.scheduleAt(timer, 5 * TICK + 1);
+        assertTrue(timer.isScheduled());
+        assertEquals(wheel.size(), 1);
+
+        assertEquals(wheel.expire(5 * TICK), 0, "not before deadline");
+        assertEquals(wheel.expire(6 * TICK), 1, "fired on the next tick");
+        assertEquals(fired.size(), 1);
+        assertFalse(timer.isScheduled());
+        assertEquals(wheel.size(), 0);
+    }
+
+    @Test
+    public void testDeadlineBeyondOneRotation() throws Exception {
+        HashedTimerWheel wheel = new HashedTimerWheel(TICK, 64, 0);
+        int[] fired = new int[1];
+        HashedTimerWheel.Timer timer = new HashedTimerWheel.Timer(() -> fired[0]++);
+
+        wheel.scheduleAt(timer, 100 * TICK);
+        for (long now = 0; now < 100 * TICK; now += TICK) {
+            wheel.expire(now);
+        }
+        assertEquals(fired[0], 0, "same bucket, but the next rotation");
+
+        wheel.expire(100 * TICK);
+        assertEquals(fired[0], 1);
+    }
+
+    @Test
+    public void testFailedTaskDoesNotStrandLaterTimers() throws Exception {
+        HashedTimerWheel wheel = new HashedTimerWheel(TICK, 64, 0);
+        List<String> fired = new ArrayList<>();
+        HashedTimerWheel.Timer failing = new HashedTimerWheel.Timer(() -> {
+            fired.add("failing");
+            throw new IllegalStateException("task is failed");
+        });
+        HashedTimerWheel.Timer next = new HashedTimerWheel.Timer(() -> fired.add("next"));
+
+        wheel.scheduleAt(failing, 2 * TICK);
+        wheel.scheduleAt(next, 3 * TICK);
+
+        assertEquals(wheel.expire(4 * TICK), 2);
+        assertEquals(fired.toString(), "[failing, next]");
+        assertFalse(next.isScheduled());
+        assertEquals(wheel.size(), 0);
+
+        wheel.scheduleAt(failing, 6 * TICK);
+        assertTrue(failing.isScheduled(), "a failed timer can be scheduled again");
+    }
+
+    @Test
+    public void testRescheduleAndCancel() throws Exception {
+        HashedTimerWheel wheel = new HashedTimerWheel(TICK, 64, 0);
+        int[] fired = new int[1];
+        HashedTimerWheel.Timer timer = new HashedTimerWheel.Timer(() -> fired[0]++);
+
+        wheel.scheduleAt(timer, 3 * TICK);
+        wheel.scheduleAt(timer, 10 * TICK);
+        assertEquals(wheel.size(), 1, "rescheduling moves the timer");
+
+        wheel.expire(5 * TICK);
+        assertEquals(fired[0], 0);
+
+        wheel.cancel(timer);
+        wheel.expire(20 * TICK);
+        assertEquals(fired[0], 0);
+        assertEquals(wheel.size(), 0);
+    }
+
+    @Test
+    public void testCancelledByEarlierTaskDoesNotFire() throws Exception {
+        HashedTimerWheel wheel = new HashedTimerWheel(TICK, 64, 0);
+        List<String> fired = new ArrayList<>();
+        HashedTimerWheel.Timer second = new HashedTimerWheel.Timer(() -> fired.add("second"));
+        HashedTimerWheel.Timer first = new HashedTimerWheel.Timer(() -> {
+            fired.add("first");
+            wheel.cancel(second);
+        });
+
+        wheel.scheduleAt(first, 2 * TICK);
+        wheel.scheduleAt(second, 3 * TICK);
+        wheel.expire(4 * TICK);
+
+        assertEquals(fired.size(), 1);
+        assertEquals(fired.get(0), "first");
+    }
+
+    @Test
+    public void testNanosToNextExpiry() throws Exception {
+        HashedTimerWheel wheel = new HashedTimerWheel(TICK, 128, 0);
+        assertEquals(wheel.nanosToNextExpiry(0, 777), 777, "nothing is scheduled");
+
+        wheel.scheduleAt(new HashedTimerWheel.Timer(() -> { }), 70 * TICK);
+        assertEquals(wheel.nanosToNextExpiry(0, Long.MAX_VALUE), 70 * TICK);
+        assertEquals(wheel.nanosToNextExpiry(TICK / 2, Long.MAX_VALUE), 70 * TICK - TICK / 2);
+        assertEquals(wheel.nanosToNextExpiry(0, 10 * TICK), 10 * TICK, "capped by max");
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.concurrent;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class SpscRingBufferTest {
+
+    @Test
+    public void testOfferPollKeepsOrderAcrossWrap() throws Exception {
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(4, new BlockingWaitStrategy());
+
+        for (int j = 0; j < 10; j++) {
+            assertTrue(ring.offer(j * 2));
+            assertTrue(ring.offer(j * 2 + 1));
+            assertEquals(ring.size(), 2, "size");
+            assertEquals(ring.poll(), Integer.valueOf(j * 2));
+            assertEquals(ring.poll(), Integer.valueOf(j * 2 + 1));
+            assertNull(ring.poll());
+            assertTrue(ring.isEmpty());
+        }
+    }
+
+    @Test
+    public void testBoundedWithCounters() throws Exception {
+        SpscRingBuffer<String> ring = new SpscRingBuffer<>(2, new BlockingWaitStrategy());
+
+        assertTrue(ring.offer("a"));
+        assertTrue(ring.offer("b"));
+        assertFalse(ring.offer("c"), "buffer is full");
+
+        assertEquals(ring.getHighWaterMark(), 2, "high water mark");
+        assertEquals(ring.getRejected(), 1, "rejected");
+
+        ring.clear();
+        assertTrue(ring.isEmpty());
+        assertEquals(ring.getHighWaterMark(), 2, "high water mark survives clear");
+    }
+
+    @Test
+    public void testStagedAreInvisibleUntilFlush() throws Exception {
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(4, new BlockingWaitStrategy());
+
+        assertTrue(ring.stage(1));
+        assertTrue(ring.stage(2));
+        assertTrue(ring.isEmpty(), "nothing is published");
+        assertNull(ring.poll());
+
+        assertEquals(ring.flush(), 2, "published");
+        assertEquals(ring.flush(), 0, "nothing left");
+        assertEquals(ring.size(), 2, "size");
+
+        assertTrue(ring.stage(3));
+        assertTrue(ring.stage(4));
+        assertFalse(ring.stage(5), "staged count against capacity");
+        assertEquals(ring.flush(), 2);
+
+        for (int j = 1; j <= 4; j++) {
+            assertEquals(ring.poll(), Integer.valueOf(j));
+        }
+        assertEquals(ring.getHighWaterMark(), 4, "high water mark");
+    }
+
+    @Test
+    public void testLog2Histogram() throws Exception {
+        Log2Histogram histogram = new Log2Histogram(4);
+        histogram.record(1);
+        histogram.record(3);
+        histogram.record(5);
+        histogram.record(100);
+
+        assertEquals(histogram.getCount(0), 1, "1");
+        assertEquals(histogram.getCount(1), 1, "2..3");
+        assertEquals(histogram.getCount(2), 1, "4..7");
+        assertEquals(histogram.getCount(3), 1, "8+");
+        assertEquals(histogram.getTotal(), 4);
+        assertEquals(histogram.getPercentile(0.5), 3, "p50");
+        assertEquals(histogram.getPercentile(1.0), 100, "p100");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCapacityMustBePowerOfTwo() throws Exception {
+        new SpscRingBuffer<>(3, new BlockingWaitStrategy());
+    }
+
+    @Test
+    public void testAwaitTimesOut() throws Exception {
+        SpscRingBuffer<String> ring = new SpscRingBuffer<>(2, new BlockingWaitStrategy());
+        assertFalse(ring.await(TimeUnit.MILLISECONDS.toNanos(5)));
+        ring.offer("a");
+        assertTrue(ring.await(TimeUnit.MILLISECONDS.toNanos(5)));
+    }
+
+    @Test
+    public void testBlockingHandoff() throws Exception {
+        handoff(new BlockingWaitStrategy());
+    }
+
+    @Test
+    public void testSleepingHandoff() throws Exception {
+        handoff(new SleepingWaitStrategy());
+    }
+
+    @Test
+    public void testYieldingHandoff() throws Exception {
+        handoff(new YieldingWaitStrategy());
+    }
+
+    @Test
+    public void testBusySpinHandoff() throws Exception {
+        handoff(new BusySpinWaitStrategy());
+    }
+
+    @Test
+    public void testEveryTypeCreatesOwnInstance() throws Exception {
+        for (WaitStrategyType type : WaitStrategyType.values()) {
+            assertNotSame(type.create(), type.create());
+        }
+    }
+
+    private static void handoff(IWaitStrategy waitStrategy) throws Exception {
+        final int count = 100_000;
+        final SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(64, waitStrategy);
+
+        Thread producer = new Thread(() -> {
+            for (int j = 0; j < count; j++) {
+                while (!ring.offer(j)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        for (int j = 0; j < count; j++) {
+            Integer value;
+            while ((value = ring.poll()) == null) {
+                assertTrue(ring.await(TimeUnit.SECONDS.toNanos(5)), "producer is alive");
+            }
+            assertEquals(value.intValue(), j, "order");
+        }
+
+        producer.join();
+        assertTrue(ring.isEmpty());
+    }
+}
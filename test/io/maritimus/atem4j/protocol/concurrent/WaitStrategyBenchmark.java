@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency / cpu tradeoff of the wait strategies: a producer publishes a timestamp every
+ * {@link #INTERVAL_NANOS}, the consumer waits for it by the strategy under test.
+ *
+ * Run it as a plain java program, it is not a part of the test suite.
+ */
+public class WaitStrategyBenchmark {
+
+    public static final int EVENTS = 5000;
+    public static final long INTERVAL_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    public static void main(String[] args) throws Exception {
+        System.out.println(String.format(
+                "%-10s %10s %10s %10s %8s",
+                "strategy", "p50 us", "p99 us", "max us", "cpu %"
+        ));
+
+        for (WaitStrategyType type : WaitStrategyType.values()) {
+            run(type); // warm up
+            Result result = run(type);
+            System.out.println(String.format(
+                    "%-10s %10.1f %10.1f %10.1f %8.1f",
+                    type,
+                    result.percentile(0.50) / 1000.0,
+                    result.percentile(0.99) / 1000.0,
+                    result.percentile(1.00) / 1000.0,
+                    result.cpuPercent
+            ));
+        }
+    }
+
+    static Result run(WaitStrategyType type) throws Exception {
+        final SpscRingBuffer<long[]> ring = new SpscRingBuffer<>(1024, type.create());
+        final long[][] stamps = new long[EVENTS][1];
+        final long[] latencies = new long[EVENTS];
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final long[] cpu = new long[1];
+
+        Thread consumer = new Thread(() -> {
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            try {
+                for (int j = 0; j < EVENTS; j++) {
+                    long[] stamp;
+                    while ((stamp = ring.poll()) == null) {
+                        ring.await(TimeUnit.SECONDS.toNanos(1));
+                    }
+                    latencies[j] = System.nanoTime() - stamp[0];
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            cpu[0] = threads.getCurrentThreadCpuTime() - cpuStart;
+        }, String.format("bench-consumer-%s", type));
+
+        long start = System.nanoTime();
+        consumer.start();
+
+        for (int j = 0; j < EVENTS; j++) {
+            long next = start + (j + 1) * INTERVAL_NANOS;
+            while (System.nanoTime() < next) {
+                LockSupport.parkNanos(next - System.nanoTime());
+            }
+            stamps[j][0] = System.nanoTime();
+            ring.offer(stamps[j]);
+        }
+
+        consumer.join();
+        long wall = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new Result(latencies, 100.0 * cpu[0] / wall);
+    }
+
+    static class Result {
+        final long[] latencies;
+        final double cpuPercent;
+
+        Result(long[] latencies, double cpuPercent) {
+            this.latencies = latencies;
+            this.cpuPercent = cpuPercent;
+        }
+
+        long percentile(double p) {
+            int index = (int) Math.ceil(p * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))];
+        }
+    }
+}
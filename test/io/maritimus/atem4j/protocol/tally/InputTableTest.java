@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.tally;
+
+import io.maritimus.atem4j.protocol.command.CmdInputProperties;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class InputTableTest {
+
+    @Test
+    public void testChangesAreDetectedByContent() throws Exception {
+        InputTable.Builder builder = new InputTable.Builder();
+        assertEquals(builder.put(props(1, "CAM1", "Camera 1", 1)), InputTable.CHANGED_NAMES | InputTable.CHANGED_PROPERTIES);
+        assertEquals(builder.put(props(1, new String("CAM1"), new String("Camera 1"), 1)), 0, "same content");
+        assertEquals(builder.put(props(1, "CAM1", "Camera 1", 2)), InputTable.CHANGED_PROPERTIES);
+        assertEquals(builder.put(props(1, "CAM", "Camera 1", 2)), InputTable.CHANGED_NAMES);
+
+        InputTable table = builder.build();
+        assertEquals(table.getShortName(1), "CAM");
+        assertEquals(table.getLongName(1), "Camera 1");
+        assertEquals(table.getPortType(1), 2);
+        assertEquals(table.getPortType(2), InputTable.NONE);
+        assertEquals(table.getLongName(2), "Input 2");
+    }
+
+    @Test
+    public void testManyInputsAndNameDedupe() throws Exception {
+        InputTable.Builder builder = new InputTable.Builder();
+        for (int j = 0; j < 500; j++) {
+            builder.setNames(j * 1000 + 10, new String("Black"), "Input " + j);
+        }
+
+        InputTable table = builder.build();
+        assertEquals(table.size(), 500);
+        assertEquals(table.getLongName(499010), "Input 499");
+        assertSame(table.getShortName(10), table.getShortName(499010), "interned");
+
+        InputTable.Builder copyBuilder = new InputTable.Builder(table);
+        InputTable copy = copyBuilder.build();
+        assertTrue(copy.hasSameNames(250010, table));
+
+        assertTrue(copyBuilder.setNames(7, "CAM7", "Camera 7"), "added to a copy");
+        assertFalse(copyBuilder.setNames(499010, "Black", "Input 499"), "found in a copy");
+        InputTable grown = copyBuilder.build();
+        assertEquals(grown.size(), 501);
+        assertEquals(grown.getShortName(7), "CAM7");
+        assertEquals(copy.size(), 500, "built table never changes");
+    }
+
+    private static CmdInputProperties props(int source, String shortName, String longName, int portType) {
+        return new CmdInputProperties(source, longName, shortName, 0, 0, 0, 0, portType, 0, 0, 0, 0, 0);
+    }
+}
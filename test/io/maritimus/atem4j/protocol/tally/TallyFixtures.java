@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.tally;
+
+import io.maritimus.atem4j.protocol.command.CmdTallyBySource;
+
+/**
+ * Tally commands for tests.
+ */
+public final class TallyFixtures {
+
+    private TallyFixtures() {
+    }
+
+    /**
+     * @param pairs source id and status, repeated
+     */
+    public static CmdTallyBySource tally(int... pairs) {
+        int[][] statuses = new int[pairs.length / 2][2];
+        for (int j = 0; j < statuses.length; j++) {
+            statuses[j][0] = pairs[2 * j];
+            statuses[j][1] = pairs[2 * j + 1];
+        }
+        return new CmdTallyBySource(statuses.length, statuses);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.tally;
+
+import io.maritimus.atem4j.protocol.command.CmdTallyBySource;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.maritimus.atem4j.protocol.tally.TallyFixtures.tally;
+import static org.testng.Assert.*;
+
+public class TallyTableTest {
+
+    @Test
+    public void testSparseSourcesAreIndexedDensely() throws Exception {
+        SourceIndex index = SourceIndex.of(0, 1, 2, 1000, 2001, 3010, 10010);
+        assertEquals(index.size(), 7);
+        assertEquals(index.indexOf(1000), 3);
+        assertEquals(index.indexOf(10010), 6);
+        assertEquals(index.indexOf(5), SourceIndex.NONE);
+        assertEquals(index.sourceAt(4), 2001);
+    }
+
+    @Test
+    public void testLookupsAndBulkQueries() throws Exception {
+        TallyTable table = TallyTable.create(null, tally(1, 1, 2, 2, 1000, 0, 3010, 3));
+
+        assertTrue(table.isOnProgram(1));
+        assertTrue(table.isOnPreview(2));
+        assertFalse(table.isOnProgram(1000));
+        assertTrue(table.isOnProgram(3010) && table.isOnPreview(3010));
+        assertFalse(table.isOnProgram(42), "unknown source");
+        assertEquals(table.getStatus(3010), CmdTallyBySource.STATUS_PROGRAM | CmdTallyBySource.STATUS_PREVIEW);
+
+        assertEquals(table.getProgramSources(), new int[]{1, 3010}, "on air");
+        assertEquals(table.countOnPreview(), 2);
+
+        List<Integer> preview = new ArrayList<>();
+        table.forEachOnPreview(preview::add);
+        assertEquals(preview.size(), 2);
+    }
+
+    @Test
+    public void testIndexIsReusedForSameSources() throws Exception {
+        TallyTable first = TallyTable.create(null, tally(1, 1, 2, 2));
+        TallyTable second = TallyTable.create(first.index, tally(1, 2, 2, 1));
+        assertSame(second.index, first.index);
+        assertTrue(second.isOnPreview(1));
+
+        TallyTable third = TallyTable.create(second.index, tally(1, 1, 3, 2));
+        assertNotSame(third.index, first.index, "topology is changed");
+    }
+
+    @Test
+    public void testManySources() throws Exception {
+        int[] pairs = new int[2 * 300];
+        for (int j = 0; j < 300; j++) {
+            pairs[2 * j] = 1000 + j * 7;
+            pairs[2 * j + 1] = j % 100 == 0 ? CmdTallyBySource.STATUS_PROGRAM : 0;
+        }
+
+        TallyTable table = TallyTable.create(null, tally(pairs));
+        assertEquals(table.countOnProgram(), 3);
+        assertTrue(table.isOnProgram(1000 + 200 * 7));
+        assertFalse(table.isOnProgram(1000 + 201 * 7));
+    }
+
+    @Test
+    public void testDeltaHasOnlyTransitions() throws Exception {
+        TallyTable before = TallyTable.create(null, tally(1, 1, 2, 2, 3, 0));
+        TallyTable after = TallyTable.create(before.index, tally(1, 0, 2, 1, 3, 0));
+
+        TallyDelta delta = TallyDelta.between(before, after);
+        assertEquals(delta.size(), 2);
+        assertEquals(delta.sourceAt(1), 2);
+        assertEquals(delta.oldStatusAt(1), CmdTallyBySource.STATUS_PREVIEW);
+        assertEquals(delta.newStatusAt(1), CmdTallyBySource.STATUS_PROGRAM);
+        assertEquals(delta.toString(), "TallyDelta 1: PGM->-, 2: PVW->PGM");
+
+        assertTrue(TallyDelta.between(after, TallyTable.create(after.index, tally(1, 0, 2, 1, 3, 0))).isEmpty());
+    }
+
+    @Test
+    public void testDeltaAcrossTopologies() throws Exception {
+        TallyTable before = TallyTable.create(null, tally(1, 1, 2, 2));
+        TallyTable after = TallyTable.create(before.index, tally(2, 2, 1000, 1));
+
+        TallyDelta delta = TallyDelta.between(before, after);
+        assertEquals(delta.getSources(), new int[]{1000, 1}, "new on air, gone source is off");
+    }
+
+    @Test
+    public void testTallyEqualsBySourceId() throws Exception {
+        assertEquals(tally(1, 1, 2, 2), tally(2, 2, 1, 1));
+        assertEquals(tally(1, 1, 2, 2).hashCode(), tally(2, 2, 1, 1).hashCode());
+        assertNotEquals(tally(1, 1, 2, 2), tally(1, 2, 2, 1));
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.udp;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testBuffersAreRecycled() throws Exception {
+        BufferPool pool = new BufferPool(2, 16, false, false);
+
+        PooledBuffer a = pool.acquire();
+        a.buffer.put((byte) 1);
+        PooledBuffer b = pool.acquire();
+        assertNull(pool.acquire(), "pool is exhausted");
+        assertEquals(pool.getExhausted(), 1, "exhausted");
+        assertEquals(pool.getLeased(), 2, "leased");
+
+        a.release();
+        PooledBuffer c = pool.acquire();
+        assertSame(c, a, "released buffer is reused");
+        assertEquals(c.buffer.position(), 0, "reused buffer is cleared");
+
+        b.release();
+        c.release();
+        assertEquals(pool.getAllocated(), 2, "allocated");
+        assertEquals(pool.getLeased(), 0, "leased");
+        assertEquals(pool.getHighWaterMark(), 2, "high water mark");
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testDoubleReleaseFails() throws Exception {
+        BufferPool pool = new BufferPool(1, 16, true, false);
+        PooledBuffer buffer = pool.acquire();
+        buffer.release();
+        buffer.release();
+    }
+
+    @Test
+    public void testLeaksAreReported() throws Exception {
+        BufferPool pool = new BufferPool(4, 16, false, true);
+        pool.acquire();
+        pool.acquire().release();
+
+        assertEquals(pool.reportLeaks(0), 1, "leaks");
+        assertEquals(pool.reportLeaks(Long.MAX_VALUE), 0, "young leases are not reported");
+        assertEquals(new BufferPool(4, 16, false, false).reportLeaks(0), 0, "detection is off");
+    }
+}
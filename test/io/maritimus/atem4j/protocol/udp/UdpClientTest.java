@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.udp;
+
+import io.maritimus.atem4j.protocol.Packet;
+import io.maritimus.atem4j.protocol.PacketHello;
+import io.maritimus.atem4j.protocol.Utils;
+import io.maritimus.atem4j.protocol.concurrent.VirtualThreads;
+import org.testng.annotations.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public class UdpClientTest {
+
+    private static final String SERVER_HELLO = "10 14 22 f1 00 00 00 00 00 18 00 00 02000010 00000000";
+
+    @Test
+    public void testLoopReceivesAndStopsPromptly() throws Exception {
+        receiveAndStop(Thread::new);
+    }
+
+    @Test
+    public void testLoopOnVirtualThread() throws Exception {
+        // falls back to platform threads on older jdks
+        receiveAndStop(VirtualThreads.newThreadFactory("udp-client-test"));
+    }
+
+    private static void receiveAndStop(ThreadFactory threadFactory) throws Exception {
+        try (DatagramChannel atem = DatagramChannel.open()) {
+            atem.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            InetSocketAddress atemAddress = (InetSocketAddress) atem.getLocalAddress();
+
+            UdpClient client = UdpClient.create(atemAddress, new SilentUdpClientListener());
+            Thread thread = threadFactory.newThread(client::loop);
+            thread.start();
+
+            atem.send(
+                    Utils.parseHexString(SERVER_HELLO),
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), client.localPort)
+            );
+
+            long deadline = System.currentTimeMillis() + 2000;
+            Packet packet;
+            while ((packet = client.poll()) == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertTrue(packet instanceof PacketHello, "hello is received");
+
+            client.stop();
+            thread.join(1000);
+            assertFalse(thread.isAlive(), "loop is done after stop");
+        }
+    }
+
+    @Test
+    public void testBurstIsPublishedAsOneBatch() throws Exception {
+        try (DatagramChannel atem = DatagramChannel.open()) {
+            atem.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            InetSocketAddress atemAddress = (InetSocketAddress) atem.getLocalAddress();
+
+            AtomicInteger batches = new AtomicInteger();
+            UdpClient client = UdpClient.create(atemAddress, new SilentUdpClientListener() {
+                @Override
+                public void onBatchReceived(int packets) {
+                    batches.incrementAndGet();
+                }
+            });
+
+            InetSocketAddress clientAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), client.localPort);
+            for (int j = 0; j < 50; j++) {
+                atem.send(Utils.parseHexString(SERVER_HELLO), clientAddress);
+            }
+            Thread.sleep(50);
+
+            assertEquals(client.receiveBatch(), 50, "burst is drained");
+            assertEquals(client.inQueue.size(), 50, "burst is published");
+            assertEquals(batches.get(), 1, "consumer is signalled once");
+            assertEquals(client.batchSizes.getTotal(), 1, "batches");
+            assertEquals(client.batchSizes.getMax(), 50, "batch size");
+
+            assertEquals(client.pool.getLeased(), 50, "buffers are leased until decoded");
+            int decoded = 0;
+            while (client.poll() != null) {
+                decoded++;
+            }
+            assertEquals(decoded, 50, "decoded");
+            assertEquals(client.pool.getLeased(), 0, "buffers are released after decoding");
+
+            client.close();
+        }
+    }
+
+    @Test
+    public void testLoopStopsOnInterrupt() throws Exception {
+        UdpClient client = UdpClient.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), UdpClient.DEFAULT_ATEM_PORT),
+                new SilentUdpClientListener()
+        );
+        Thread thread = new Thread(client::loop);
+        thread.start();
+        Thread.sleep(50);
+
+        thread.interrupt();
+        thread.join(1000);
+
+        assertFalse(thread.isAlive(), "loop is done after interrupt");
+        assertTrue(client.isStopped, "client is stopped");
+        assertFalse(client.channel.isOpen(), "channel is closed");
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 Oleg Akimov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.maritimus.atem4j.protocol.udp;
+
+import io.maritimus.atem4j.protocol.Packet;
+import io.maritimus.atem4j.protocol.PacketHello;
+import io.maritimus.atem4j.protocol.Utils;
+import org.testng.annotations.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+
+import static org.testng.Assert.*;
+
+public class UdpReactorTest {
+
+    private static final String SERVER_HELLO = "10 14 22 f1 00 00 00 00 00 18 00 00 02000010 00000000";
+
+    @Test
+    public void testOneThreadServesManyClients() throws Exception {
+        try (DatagramChannel atem = DatagramChannel.open();
+             UdpReactor reactor = UdpReactor.create(1)) {
+
+            atem.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            InetSocketAddress atemAddress = (InetSocketAddress) atem.getLocalAddress();
+
+            UdpClient[] clients = new UdpClient[8];
+            for (int j = 0; j < clients.length; j++) {
+                clients[j] = UdpClient.create(atemAddress, new SilentUdpClientListener());
+                reactor.register(clients[j]);
+            }
+
+            for (UdpClient client : clients) {
+                atem.send(
+                        Utils.parseHexString(SERVER_HELLO),
+                        new InetSocketAddress(InetAddress.getLoopbackAddress(), client.localPort)
+                );
+            }
+
+            for (UdpClient client : clients) {
+                Packet packet = awaitPacket(client, 2000);
+                assertNotNull(packet, "packet is received");
+                assertTrue(packet instanceof PacketHello, "packet is hello");
+                client.stop();
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testLoopIsForbiddenInReactor() throws Exception {
+        try (UdpReactor reactor = UdpReactor.create(1)) {
+            UdpClient client = UdpClient.create(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), UdpClient.DEFAULT_ATEM_PORT),
+                    new SilentUdpClientListener()
+            );
+            reactor.register(client);
+            try {
+                client.loop();
+            } finally {
+                client.stop();
+            }
+        }
+    }
+
+    private static Packet awaitPacket(UdpClient client, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        Packet packet;
+        while ((packet = client.poll()) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        return packet;
+    }
+}